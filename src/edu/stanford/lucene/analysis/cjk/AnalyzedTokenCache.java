@@ -0,0 +1,393 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only segment file of analyzed token streams, keyed by a hash of the
+ * analysis chain configuration, the field name and the field content.
+ * <p>
+ * Each record holds the terms, offsets, position increments, types and
+ * payloads of the final token stream for one value, plus its final offset.
+ * Only the record keys are kept in memory;  token data is read from the
+ * file on demand with positional reads, so a reindex over unchanged values is
+ * mostly sequential I/O.  A partially written record at the end of the file
+ * (e.g. after a crash) is discarded when the file is opened, and a file
+ * written in an older format is emptied and rebuilt.
+ * <p>
+ * Instances are thread safe.  Use with {@link TokenCachingAnalyzer}.
+ *
+ */
+public final class AnalyzedTokenCache implements Closeable
+{
+	/** "CJKT" */
+	private static final int MAGIC = 0x434A4B54;
+	/** 2:  strings are an int length and UTF-8 bytes, so they aren't limited to 64k */
+	private static final int VERSION = 2;
+	private static final int HEADER_LENGTH = 8;
+
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	/** file position of each record, keyed by its content key */
+	private final Map<Key, Long> index = new HashMap<Key, Long>();
+	/** file position where the next record will be appended */
+	private long end;
+
+	/**
+	 * Open the cache segment file, creating it if it doesn't exist.  A segment
+	 * file written in an older format is emptied.
+	 * @param file the segment file
+	 */
+	public AnalyzedTokenCache(File file) throws IOException
+	{
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		boolean opened = false;
+		try
+		{
+			end = raf.length() == 0 ? -1 : loadIndex(file);
+			if (end == -1)
+			{
+				raf.setLength(0);
+				raf.writeInt(MAGIC);
+				raf.writeInt(VERSION);
+				end = HEADER_LENGTH;
+			}
+			opened = true;
+		}
+		finally
+		{
+			if (!opened)
+				raf.close();
+		}
+	}
+
+	/**
+	 * @return the number of values in the cache
+	 */
+	public synchronized int size()
+	{
+		return index.size();
+	}
+
+	public void close() throws IOException
+	{
+		raf.close();
+	}
+
+	/**
+	 * compute the cache key for the value of a field analyzed by a particular chain
+	 * @param chainConfig identifies the configuration of the analysis chain
+	 */
+	static Key key(String chainConfig, String fieldName, CharSequence content)
+	{
+		MessageDigest md5;
+		try
+		{
+			md5 = MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+		update(md5, chainConfig);
+		update(md5, fieldName);
+		update(md5, content);
+		ByteBuffer digest = ByteBuffer.wrap(md5.digest());
+		return new Key(digest.getLong(0), digest.getLong(8));
+	}
+
+	private static void update(MessageDigest md, CharSequence chars)
+	{
+		int len = chars.length();
+		// length prefix so ("ab", "c") and ("a", "bc") hash differently
+		md.update((byte) (len >>> 24));
+		md.update((byte) (len >>> 16));
+		md.update((byte) (len >>> 8));
+		md.update((byte) len);
+		for (int i = 0; i < len; i++)
+		{
+			char c = chars.charAt(i);
+			md.update((byte) (c >>> 8));
+			md.update((byte) c);
+		}
+	}
+
+	/**
+	 * @return the cached tokens for the key, or null if there are none
+	 */
+	Entry get(Key key) throws IOException
+	{
+		Long pos;
+		synchronized (this)
+		{
+			pos = index.get(key);
+		}
+		if (pos == null)
+			return null;
+
+		ByteBuffer lenBuf = ByteBuffer.allocate(4);
+		readFully(lenBuf, pos);
+		ByteBuffer recordBuf = ByteBuffer.allocate(lenBuf.getInt(0));
+		readFully(recordBuf, pos + 4);
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(recordBuf.array()));
+		// skip the key
+		in.readLong();
+		in.readLong();
+		int numTokens = in.readInt();
+		Entry entry = new Entry(numTokens);
+		entry.finalOffset = in.readInt();
+		for (int i = 0; i < numTokens; i++)
+		{
+			int start = in.readInt();
+			int end = in.readInt();
+			int posInc = in.readInt();
+			String term = readString(in);
+			String type = readString(in);
+			byte[] payload = null;
+			int payloadLen = in.readInt();
+			if (payloadLen >= 0)
+			{
+				payload = new byte[payloadLen];
+				in.readFully(payload);
+			}
+			entry.add(term, start, end, posInc, type, payload);
+		}
+		return entry;
+	}
+
+	/**
+	 * append the tokens for the key to the cache, unless the key is already present
+	 */
+	void put(Key key, Entry entry) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0);  // record length, filled in below
+		out.writeLong(key.hi);
+		out.writeLong(key.lo);
+		out.writeInt(entry.size);
+		out.writeInt(entry.finalOffset);
+		for (int i = 0; i < entry.size; i++)
+		{
+			out.writeInt(entry.startOffsets[i]);
+			out.writeInt(entry.endOffsets[i]);
+			out.writeInt(entry.posIncs[i]);
+			writeString(out, entry.terms[i]);
+			writeString(out, entry.types[i]);
+			byte[] payload = entry.payloads[i];
+			if (payload == null)
+				out.writeInt(-1);
+			else
+			{
+				out.writeInt(payload.length);
+				out.write(payload);
+			}
+		}
+		out.flush();
+		ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+		record.putInt(0, record.capacity() - 4);
+
+		synchronized (this)
+		{
+			if (index.containsKey(key))
+				return;
+			long pos = end;
+			while (record.hasRemaining())
+				channel.write(record, pos + record.position());
+			index.put(key, pos);
+			end = pos + record.capacity();
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException
+	{
+		byte[] utf8 = s.getBytes("UTF-8");
+		out.writeInt(utf8.length);
+		out.write(utf8);
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		byte[] utf8 = new byte[in.readInt()];
+		in.readFully(utf8);
+		return new String(utf8, "UTF-8");
+	}
+
+	private void readFully(ByteBuffer buf, long pos) throws IOException
+	{
+		while (buf.hasRemaining())
+		{
+			if (channel.read(buf, pos + buf.position()) < 0)
+				throw new EOFException("truncated token cache record at " + pos);
+		}
+	}
+
+	/**
+	 * scan the record headers in the file to build the in-memory index
+	 * @return the position after the last complete record, or -1 if the file
+	 *  was written in another format version
+	 */
+	private long loadIndex(File file) throws IOException
+	{
+		long length = raf.length();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try
+		{
+			if (in.readInt() != MAGIC)
+				throw new IOException("not a token cache file: " + file);
+			if (in.readInt() != VERSION)
+				return -1;
+
+			long pos = HEADER_LENGTH;
+			while (pos + 4 <= length)
+			{
+				int recordLength = in.readInt();
+				if (recordLength < 16 || pos + 4 + recordLength > length)
+					break;
+				index.put(new Key(in.readLong(), in.readLong()), pos);
+				skipFully(in, recordLength - 16);
+				pos += 4 + recordLength;
+			}
+			if (pos < length)
+				// drop a partially written record
+				raf.setLength(pos);
+			return pos;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static void skipFully(DataInputStream in, int n) throws IOException
+	{
+		while (n > 0)
+		{
+			int skipped = in.skipBytes(n);
+			if (skipped <= 0)
+				throw new EOFException();
+			n -= skipped;
+		}
+	}
+
+
+	/** 128 bit content key */
+	static final class Key
+	{
+		final long hi;
+		final long lo;
+
+		Key(long hi, long lo)
+		{
+			this.hi = hi;
+			this.lo = lo;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return hi == other.hi && lo == other.lo;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (int) (lo ^ (lo >>> 32));
+		}
+	}
+
+
+	/** the tokens of one analyzed value, as parallel arrays */
+	static final class Entry
+	{
+		int size = 0;
+		int finalOffset = 0;
+		String[] terms;
+		int[] startOffsets;
+		int[] endOffsets;
+		int[] posIncs;
+		String[] types;
+		byte[][] payloads;
+
+		Entry(int capacity)
+		{
+			capacity = Math.max(capacity, 4);
+			terms = new String[capacity];
+			startOffsets = new int[capacity];
+			endOffsets = new int[capacity];
+			posIncs = new int[capacity];
+			types = new String[capacity];
+			payloads = new byte[capacity][];
+		}
+
+		void add(String term, int start, int end, int posInc, String type, byte[] payload)
+		{
+			if (size == terms.length)
+			{
+				int newCapacity = size * 2;
+				String[] newTerms = new String[newCapacity];
+				System.arraycopy(terms, 0, newTerms, 0, size);
+				terms = newTerms;
+				int[] newStarts = new int[newCapacity];
+				System.arraycopy(startOffsets, 0, newStarts, 0, size);
+				startOffsets = newStarts;
+				int[] newEnds = new int[newCapacity];
+				System.arraycopy(endOffsets, 0, newEnds, 0, size);
+				endOffsets = newEnds;
+				int[] newPosIncs = new int[newCapacity];
+				System.arraycopy(posIncs, 0, newPosIncs, 0, size);
+				posIncs = newPosIncs;
+				String[] newTypes = new String[newCapacity];
+				System.arraycopy(types, 0, newTypes, 0, size);
+				types = newTypes;
+				byte[][] newPayloads = new byte[newCapacity][];
+				System.arraycopy(payloads, 0, newPayloads, 0, size);
+				payloads = newPayloads;
+			}
+			terms[size] = term;
+			startOffsets[size] = start;
+			endOffsets[size] = end;
+			posIncs[size] = posInc;
+			types[size] = type;
+			payloads[size] = payload;
+			size++;
+		}
+	}
+}
@@ -0,0 +1,291 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import com.ibm.icu.lang.UScript;
+
+/**
+ * Detects which of the Han, Hiragana, Katakana and Hangul scripts are present
+ * in text, independently of any TokenStream.
+ * <p>
+ * Results are a bit mask of {@link #HAN}, {@link #HIRAGANA}, {@link #KATAKANA}
+ * and {@link #HANGUL};  {@link #emits(CJKEmitType, int)} applies a
+ * {@link CJKEmitType} to a mask.  Per-script code point counts are added into
+ * an int array supplied by the caller, indexed by {@link #HAN_INDEX} etc.
+ * <p>
+ * All methods are static, thread safe and do not allocate.
+ *
+ */
+public final class CJKScriptClassifier
+{
+	/** script mask bit for Han script characters */
+	public static final int HAN = 1;
+	/** script mask bit for Hiragana script characters */
+	public static final int HIRAGANA = 2;
+	/** script mask bit for Katakana script characters */
+	public static final int KATAKANA = 4;
+	/** script mask bit for Hangul script characters */
+	public static final int HANGUL = 8;
+
+	/** all the CJK script mask bits */
+	public static final int ANY_CJK = HAN | HIRAGANA | KATAKANA | HANGUL;
+
+	/** index of the Han count in a counts array */
+	public static final int HAN_INDEX = 0;
+	/** index of the Hiragana count in a counts array */
+	public static final int HIRAGANA_INDEX = 1;
+	/** index of the Katakana count in a counts array */
+	public static final int KATAKANA_INDEX = 2;
+	/** index of the Hangul count in a counts array */
+	public static final int HANGUL_INDEX = 3;
+	/** minimum length of a counts array */
+	public static final int NUM_COUNTS = 4;
+
+	/** no CJK script chars occur below the Hangul Jamo block */
+	private static final int FIRST_CJK_CODEPOINT = 0x1100;
+
+	private CJKScriptClassifier()
+	{
+	}
+
+	/**
+	 * @return the script mask for a single code point:  one of HAN, HIRAGANA,
+	 *  KATAKANA, HANGUL, or 0 if it is in none of those scripts.
+	 */
+	public static int scriptBit(int codepoint)
+	{
+		if (codepoint < FIRST_CJK_CODEPOINT)
+			return 0;
+		// the big blocks, without a script property lookup
+		if (codepoint >= 0x4E00 && codepoint <= 0x9FCB)
+			return HAN;
+		if (codepoint >= 0xAC00 && codepoint <= 0xD7A3)
+			return HANGUL;
+		if (codepoint >= 0x3041 && codepoint <= 0x3096)
+			return HIRAGANA;
+		if (codepoint >= 0x30A1 && codepoint <= 0x30FA)
+			return KATAKANA;
+
+		switch (UScript.getScript(codepoint))
+		{
+			case UScript.HAN:
+				return HAN;
+			case UScript.HIRAGANA:
+				return HIRAGANA;
+			case UScript.KATAKANA:
+				return KATAKANA;
+			case UScript.HANGUL:
+				return HANGUL;
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * @return the script mask for all of text
+	 */
+	public static int scriptMask(CharSequence text)
+	{
+		return scriptMask(text, 0, text.length());
+	}
+
+	/**
+	 * @return the script mask for the chars in text from start (inclusive) to end (exclusive)
+	 */
+	public static int scriptMask(CharSequence text, int start, int end)
+	{
+		int mask = 0;
+		int i = start;
+		while (i < end)
+		{
+			char c = text.charAt(i++);
+			if (c < FIRST_CJK_CODEPOINT)
+				continue;
+			int cp = c;
+			if (Character.isHighSurrogate(c) && i < end && Character.isLowSurrogate(text.charAt(i)))
+				cp = Character.toCodePoint(c, text.charAt(i++));
+			mask |= scriptBit(cp);
+			if (mask == ANY_CJK)
+				break;
+		}
+		return mask;
+	}
+
+	/**
+	 * @return the script mask for length chars of buf, starting at offset
+	 */
+	public static int scriptMask(char[] buf, int offset, int length)
+	{
+		int mask = 0;
+		int i = offset;
+		int end = offset + length;
+		while (i < end)
+		{
+			char c = buf[i++];
+			if (c < FIRST_CJK_CODEPOINT)
+				continue;
+			int cp = c;
+			if (Character.isHighSurrogate(c) && i < end && Character.isLowSurrogate(buf[i]))
+				cp = Character.toCodePoint(c, buf[i++]);
+			mask |= scriptBit(cp);
+			if (mask == ANY_CJK)
+				break;
+		}
+		return mask;
+	}
+
+	/**
+	 * Add the number of code points in each CJK script in text from start
+	 * (inclusive) to end (exclusive) to counts.
+	 * @param counts at least {@link #NUM_COUNTS} long;  indexed by HAN_INDEX etc.
+	 * @return the script mask for the chars
+	 */
+	public static int countScripts(CharSequence text, int start, int end, int[] counts)
+	{
+		int mask = 0;
+		int i = start;
+		while (i < end)
+		{
+			char c = text.charAt(i++);
+			if (c < FIRST_CJK_CODEPOINT)
+				continue;
+			int cp = c;
+			if (Character.isHighSurrogate(c) && i < end && Character.isLowSurrogate(text.charAt(i)))
+				cp = Character.toCodePoint(c, text.charAt(i++));
+			mask |= count(scriptBit(cp), counts);
+		}
+		return mask;
+	}
+
+	/**
+	 * Add the number of code points in each CJK script in length chars of buf,
+	 * starting at offset, to counts.
+	 * @param counts at least {@link #NUM_COUNTS} long;  indexed by HAN_INDEX etc.
+	 * @return the script mask for the chars
+	 */
+	public static int countScripts(char[] buf, int offset, int length, int[] counts)
+	{
+		int mask = 0;
+		int i = offset;
+		int end = offset + length;
+		while (i < end)
+		{
+			char c = buf[i++];
+			if (c < FIRST_CJK_CODEPOINT)
+				continue;
+			int cp = c;
+			if (Character.isHighSurrogate(c) && i < end && Character.isLowSurrogate(buf[i]))
+				cp = Character.toCodePoint(c, buf[i++]);
+			mask |= count(scriptBit(cp), counts);
+		}
+		return mask;
+	}
+
+	private static int count(int bit, int[] counts)
+	{
+		switch (bit)
+		{
+			case HAN:
+				counts[HAN_INDEX]++;
+				break;
+			case HIRAGANA:
+				counts[HIRAGANA_INDEX]++;
+				break;
+			case KATAKANA:
+				counts[KATAKANA_INDEX]++;
+				break;
+			case HANGUL:
+				counts[HANGUL_INDEX]++;
+				break;
+		}
+		return bit;
+	}
+
+	/**
+	 * Compute the script mask of each value.
+	 * @param values the values to classify;  null values get a mask of 0
+	 * @param masks  receives the mask of values[i] at masks[i];  at least values.length long
+	 */
+	public static void scriptMasks(CharSequence[] values, int[] masks)
+	{
+		scriptMasks(values, 0, values.length, masks);
+	}
+
+	/**
+	 * Compute the script mask of values[from] through values[to - 1], putting
+	 * the mask of values[i] in masks[i].  Null values get a mask of 0.
+	 */
+	public static void scriptMasks(CharSequence[] values, int from, int to, int[] masks)
+	{
+		for (int i = from; i < to; i++)
+		{
+			CharSequence value = values[i];
+			masks[i] = value == null ? 0 : scriptMask(value, 0, value.length());
+		}
+	}
+
+	/**
+	 * Count the code points of each CJK script over all the values.
+	 * @param counts at least {@link #NUM_COUNTS} long;  indexed by HAN_INDEX etc.
+	 * @return the script mask of all the values combined
+	 */
+	public static int countScripts(CharSequence[] values, int[] counts)
+	{
+		int mask = 0;
+		for (CharSequence value : values)
+		{
+			if (value != null)
+				mask |= countScripts(value, 0, value.length(), counts);
+		}
+		return mask;
+	}
+
+	/**
+	 * @return true if text with the script mask should be emitted per the emitType
+	 */
+	public static boolean emits(CJKEmitType emitType, int mask)
+	{
+		switch (emitType)
+		{
+			case HANGUL:
+				return (mask & HANGUL) != 0;
+			case JAPANESE:
+				return (mask & (HIRAGANA | KATAKANA)) != 0;
+			case HAN_SOLO:
+				return mask == HAN;
+			case CJ:
+				return (mask & (HAN | HIRAGANA | KATAKANA)) != 0 && (mask & HANGUL) == 0;
+			case ANY_CJK:
+				return mask != 0;
+			case NO_CJK:
+				return mask == 0;
+			default:
+				return false;
+		}
+	}
+}
@@ -0,0 +1,336 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.cjk.CJKBigramFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.AttributeSource;
+
+/**
+ * The equivalent of a {@link CJKSieveFilter} followed by a
+ * {@link CJKBigramFilter}, with a single buffer.
+ * <p>
+ * The value is buffered once, as for CJKSieveFilter.  Tokens of the types
+ * being bigrammed are kept only as code points and offsets, since
+ * CJKBigramFilter discards their other attributes;  only the other tokens
+ * have their state captured.  If the value is emitted, the bigrams and
+ * unigrams are generated from the buffer exactly as CJKBigramFilter would.
+ * <p>
+ * Like CJKBigramFilter, this relies on the token types of StandardTokenizer
+ * or ICUTokenizer.  Shadow emit types are counted as for CJKSieveFilter.
+ * Script hints and budgets are not supported;  use
+ * CJKSieveFilter and CJKBigramFilter if they are needed.
+ *
+ */
+public final class CJKSieveBigramFilter extends TokenFilter
+{
+	private static final String HAN_TYPE = StandardTokenizer.TOKEN_TYPES[StandardTokenizer.IDEOGRAPHIC];
+	private static final String HIRAGANA_TYPE = StandardTokenizer.TOKEN_TYPES[StandardTokenizer.HIRAGANA];
+	private static final String KATAKANA_TYPE = StandardTokenizer.TOKEN_TYPES[StandardTokenizer.KATAKANA];
+	private static final String HANGUL_TYPE = StandardTokenizer.TOKEN_TYPES[StandardTokenizer.HANGUL];
+	/** never equal to a token type */
+	private static final String NO = new String("<NO>");
+
+	// the token types to bigram, or NO
+	private final String doHan;
+	private final String doHiragana;
+	private final String doKatakana;
+	private final String doHangul;
+
+	private final CJKSieveRules.Source rulesSource;
+	private final SieveStatistics stats;
+
+	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+	private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+	private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+
+	/** has the value been buffered? */
+	private boolean filled = false;
+	private boolean emit = false;
+	private AttributeSource.State finalState;
+
+	// the buffered tokens, in order.  A token to bigram is the code points
+	// up to itemCpEnd[i];  any other token has itemCpEnd[i] == -1 and its
+	// state in passStates.
+	private int numItems = 0;
+	private int[] itemCpEnd = new int[8];
+	private int[] itemStartOffset = new int[8];
+	private int[] itemEndOffset = new int[8];
+	private final List<AttributeSource.State> passStates = new ArrayList<AttributeSource.State>();
+
+	// the code points of the tokens to bigram, with their offsets
+	private int numCps = 0;
+	private int[] cps = new int[16];
+	private int[] cpStartOffset = new int[16];
+	private int[] cpEndOffset = new int[16];
+
+	// playback, as in CJKBigramFilter:  the bigram buffer is cps[bufferStart..bufferEnd)
+	private int nextItem = 0;
+	private int nextPassState = 0;
+	private int bufferStart = 0;
+	private int bufferEnd = 0;
+	private int index = 0;
+	private int lastEndOffset = 0;
+
+	/**
+	 * bigram all CJK token types
+	 * @param in
+	 * @param emitType from {@link CJKEmitType}
+	 */
+	public CJKSieveBigramFilter(TokenStream in, final CJKEmitType emitType)
+	{
+		this(in, new CJKSieveRules.Source()
+		{
+			private final CJKSieveRules rules = new CJKSieveRules(emitType);
+
+			public CJKSieveRules getRules()
+			{
+				return rules;
+			}
+		}, null, CJKBigramFilter.HAN | CJKBigramFilter.HIRAGANA | CJKBigramFilter.KATAKANA | CJKBigramFilter.HANGUL);
+	}
+
+	/**
+	 * @param in
+	 * @param rulesSource supplies the {@link CJKSieveRules} at the start of each value
+	 * @param stats where the outcome for each value is counted;  may be null
+	 * @param flags the token types to bigram, as for {@link CJKBigramFilter#CJKBigramFilter(TokenStream, int)}
+	 */
+	public CJKSieveBigramFilter(TokenStream in, CJKSieveRules.Source rulesSource, SieveStatistics stats, int flags)
+	{
+		super(in);
+		this.rulesSource = rulesSource;
+		this.stats = stats;
+		doHan = (flags & CJKBigramFilter.HAN) == 0 ? NO : HAN_TYPE;
+		doHiragana = (flags & CJKBigramFilter.HIRAGANA) == 0 ? NO : HIRAGANA_TYPE;
+		doKatakana = (flags & CJKBigramFilter.KATAKANA) == 0 ? NO : KATAKANA_TYPE;
+		doHangul = (flags & CJKBigramFilter.HANGUL) == 0 ? NO : HANGUL_TYPE;
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException
+	{
+		if (!filled)
+		{
+			filled = true;
+			CJKSieveRules rules = rulesSource.getRules();
+			int scriptMask = fill();
+			emit = CJKScriptClassifier.emits(rules.getEmitType(), scriptMask);
+			if (stats != null)
+			{
+				stats.recordValue(emit, numItems);
+				for (CJKEmitType shadow : rules.shadowEmitTypes())
+					stats.recordShadow(shadow, CJKScriptClassifier.emits(shadow, scriptMask), emit, numItems);
+			}
+		}
+		if (!emit)
+			return false;
+
+		while (true)
+		{
+			if (bufferEnd - index > 1)
+			{
+				flushBigram();
+				return true;
+			}
+			if (nextItem >= numItems)
+			{
+				if (hasBufferedUnigram())
+				{
+					flushUnigram();
+					return true;
+				}
+				return false;
+			}
+
+			int item = nextItem;
+			if (itemCpEnd[item] == -1)
+			{
+				// not a type to bigram:  dump any buffered unigram first
+				if (hasBufferedUnigram())
+				{
+					flushUnigram();
+					return true;
+				}
+				nextItem++;
+				restoreState(passStates.get(nextPassState++));
+				return true;
+			}
+
+			if (itemStartOffset[item] != lastEndOffset)
+			{
+				// unaligned:  dump any buffered unigram, then start over
+				if (hasBufferedUnigram())
+				{
+					flushUnigram();
+					return true;
+				}
+				bufferStart = index = bufferEnd;
+			}
+			// the token's code points follow the buffer's
+			bufferEnd = itemCpEnd[item];
+			lastEndOffset = itemEndOffset[item];
+			nextItem++;
+		}
+	}
+
+	@Override
+	public void end() throws IOException
+	{
+		if (finalState != null)
+			restoreState(finalState);
+		super.end();
+	}
+
+	@Override
+	public void reset() throws IOException
+	{
+		super.reset();
+		filled = false;
+		emit = false;
+		finalState = null;
+		numItems = 0;
+		passStates.clear();
+		numCps = 0;
+		nextItem = 0;
+		nextPassState = 0;
+		bufferStart = 0;
+		bufferEnd = 0;
+		index = 0;
+		lastEndOffset = 0;
+	}
+
+	/**
+	 * buffer the value
+	 * @return the script mask of the value's tokens
+	 */
+	private int fill() throws IOException
+	{
+		int scriptMask = 0;
+		while (input.incrementToken())
+		{
+			if (scriptMask != CJKScriptClassifier.ANY_CJK)
+				scriptMask |= CJKSieveFilter.tokenScriptMask(typeAtt, termAtt);
+
+			if (numItems == itemCpEnd.length)
+			{
+				itemCpEnd = ArrayUtil.grow(itemCpEnd);
+				itemStartOffset = ArrayUtil.grow(itemStartOffset, itemCpEnd.length);
+				itemEndOffset = ArrayUtil.grow(itemEndOffset, itemCpEnd.length);
+			}
+			String type = typeAtt.type();
+			if (type == doHan || type == doHiragana || type == doKatakana || type == doHangul)
+			{
+				addCodePoints();
+				itemCpEnd[numItems] = numCps;
+				itemStartOffset[numItems] = offsetAtt.startOffset();
+				itemEndOffset[numItems] = offsetAtt.endOffset();
+			}
+			else
+			{
+				itemCpEnd[numItems] = -1;
+				passStates.add(captureState());
+			}
+			numItems++;
+		}
+		input.end();
+		finalState = captureState();
+		return scriptMask;
+	}
+
+	/** add the code points of the current token, with offsets as CJKBigramFilter assigns them */
+	private void addCodePoints()
+	{
+		char[] termBuffer = termAtt.buffer();
+		int len = termAtt.length();
+		int start = offsetAtt.startOffset();
+		int end = offsetAtt.endOffset();
+
+		int newSize = numCps + len;
+		cps = ArrayUtil.grow(cps, newSize);
+		cpStartOffset = ArrayUtil.grow(cpStartOffset, newSize);
+		cpEndOffset = ArrayUtil.grow(cpEndOffset, newSize);
+
+		boolean crazyOffsets = end - start != len;
+		for (int i = 0, cp = 0, cpLen = 0; i < len; i += cpLen)
+		{
+			cp = cps[numCps] = Character.codePointAt(termBuffer, i, len);
+			cpLen = Character.charCount(cp);
+			if (crazyOffsets)
+			{
+				// offsets modified by a synonym filter or char filter:  just preserve them
+				cpStartOffset[numCps] = start;
+				cpEndOffset[numCps] = end;
+			}
+			else
+			{
+				cpStartOffset[numCps] = start;
+				start = cpEndOffset[numCps] = start + cpLen;
+			}
+			numCps++;
+		}
+	}
+
+	private boolean hasBufferedUnigram()
+	{
+		return bufferEnd - bufferStart == 1 && index == bufferStart;
+	}
+
+	private void flushBigram()
+	{
+		clearAttributes();
+		char[] termBuffer = termAtt.resizeBuffer(4);
+		int len1 = Character.toChars(cps[index], termBuffer, 0);
+		int len2 = len1 + Character.toChars(cps[index + 1], termBuffer, len1);
+		termAtt.setLength(len2);
+		offsetAtt.setOffset(cpStartOffset[index], cpEndOffset[index + 1]);
+		typeAtt.setType(CJKBigramFilter.DOUBLE_TYPE);
+		index++;
+	}
+
+	private void flushUnigram()
+	{
+		clearAttributes();
+		char[] termBuffer = termAtt.resizeBuffer(2);
+		int len = Character.toChars(cps[index], termBuffer, 0);
+		termAtt.setLength(len);
+		offsetAtt.setOffset(cpStartOffset[index], cpEndOffset[index]);
+		typeAtt.setType(CJKBigramFilter.SINGLE_TYPE);
+		index++;
+	}
+}
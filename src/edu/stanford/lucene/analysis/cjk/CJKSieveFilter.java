@@ -37,8 +37,6 @@ import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
 import org.apache.lucene.util.AttributeSource;
 
-import com.ibm.icu.lang.UScript;
-
 /**
  * Emits tokens that are generated from StandardTokenizer or ICUTokenizer,
  * depending on value of emitType
@@ -51,6 +49,35 @@ import com.ibm.icu.lang.UScript;
  *  NO_CJK, then only emit tokens if no characters are found in Han, Hiragana, Katakana or Hangul scripts.
  * <p>
  *
+ * If a script hint is available for the value, from a {@link ScriptHintAttribute}
+ * or (with setCharFilterHints) a {@link ScriptHintCharFilter}, it is used
+ * instead of the scripts of the tokens.  Hinted values are not buffered:  their
+ * tokens are passed through, or the input is consumed without capturing tokens.
+ * <p>
+ * With setBudget, buffering stops when a value has more tokens, or takes
+ * longer to tokenize, than the budget allows.  The {@link BudgetFallback}
+ * then decides the value:  if it is emitted, the buffered tokens are followed
+ * by the rest of the input, unbuffered;  if not, the rest of the input is
+ * consumed without capturing tokens, so the final offset is the value's
+ * length.  The exception is a value suppressed because its time ran out:  the
+ * rest of its input is not read, so its final offset is the end of the last
+ * token read, and the offsets of any later values of a multivalued field are
+ * shifted back accordingly.
+ * <p>
+ * If the rules have shadow emit types and there are {@link SieveStatistics},
+ * each shadow's decision for the value, made from the same scripts, is
+ * counted there.  Shadows never change the output.  Values that exceed the
+ * budget are not counted for shadows.
+ * <p>
+ * With setReplayable(true), the filter keeps the result of each value, like a
+ * CachingTokenFilter.  Once a value has been consumed to the end, calling
+ * {@link #replay()} makes the next reset() rewind to the start of the same
+ * result instead of resetting the input, so the tokenizer is not run again
+ * for a second consumer.  A reset() without replay() drops the result and
+ * resets the input as usual, so a stream reused for another value (e.g. by an
+ * Analyzer) never replays the previous one.  Every token is buffered in this
+ * mode, including those of hinted values and of values over the budget.
+ * <p>
  * cache implementation from   org.apache.lucene.analysis.CachingTokenFilter
  *
  * @author Naomi Dushay
@@ -58,19 +85,70 @@ import com.ibm.icu.lang.UScript;
  */
 public class CJKSieveFilter extends TokenFilter
 {
+	/** what to do with a value that exceeds the budget */
+	public enum BudgetFallback
+	{
+		/** emit the value's tokens */
+		EMIT,
+		/** emit nothing for the value */
+		SUPPRESS,
+		/** decide using the scripts of the tokens buffered before the budget ran out */
+		SCRIPTS_SO_FAR;
+	}
+
 	// the CJK token types from StandardTokenizer
 	private static final String HAN_TYPE = StandardTokenizer.TOKEN_TYPES[StandardTokenizer.IDEOGRAPHIC];
 	private static final String HIRAGANA_TYPE = StandardTokenizer.TOKEN_TYPES[StandardTokenizer.HIRAGANA];
 	private static final String KATAKANA_TYPE = StandardTokenizer.TOKEN_TYPES[StandardTokenizer.KATAKANA];
 	private static final String HANGUL_TYPE = StandardTokenizer.TOKEN_TYPES[StandardTokenizer.HANGUL];
 
+	private static final CJKEmitType[] NO_SHADOWS = new CJKEmitType[0];
+
 	/** under which conditions should this filter emit tokens? */
-	private final CJKEmitType emitType;
+	private CJKEmitType emitType;
+	/** alternative emit types whose decisions are only counted */
+	private CJKEmitType[] shadowEmitTypes = NO_SHADOWS;
+	/** if not null, supplies the emitType at the start of each value */
+	private final CJKSieveRules.Source rulesSource;
+
+	/** if not null, where the outcome for each value is counted */
+	private final SieveStatistics stats;
+
+	/** which CJK scripts are in the tokens, as a {@link CJKScriptClassifier} script mask */
+	private int scriptMask = 0;
+	/** should the tokens of the current value be emitted? */
+	private boolean emit = false;
 
-	private boolean tokensHaveHan = false;
-	private boolean tokensHaveHiragana = false;
-	private boolean tokensHaveKatakana = false;
-	private boolean tokensHaveHangul = false;
+	/** if not null, where a ScriptHintCharFilter in this chain offers its hints */
+	private ScriptHintChannel hintChannel = null;
+	/** the hint taken from the hintChannel when the filter was reset */
+	private int charFilterHint = ScriptHintAttribute.NO_HINT;
+	/** true when the current value is hinted and its tokens are emitted without buffering */
+	private boolean passThrough = false;
+	private int passThroughTokens = 0;
+
+	/** maximum tokens in a value within the budget;  0 for no limit */
+	private int maxTokens = 0;
+	/** maximum time to spend buffering a value, in nanoseconds;  0 for no limit */
+	private long maxNanos = 0;
+	private BudgetFallback budgetFallback = BudgetFallback.SCRIPTS_SO_FAR;
+	/** was the budget set by setBudget, rather than taken from the rules? */
+	private boolean budgetSet = false;
+	/** true when the value exceeded the budget and the rest of the input follows the buffered tokens */
+	private boolean passThroughAfterCache = false;
+	/** did the current value exceed the budget? */
+	private boolean overBudget = false;
+	/** did the current value exceed the time budget? */
+	private boolean outOfTime = false;
+
+	/** keep the result of a value so reset() can replay it? */
+	private boolean replayable = false;
+	/** true when the input has been consumed and the result for the value is complete */
+	private boolean decided = false;
+	/** should the next reset() replay the result? */
+	private boolean replayNext = false;
+	/** true when the result is being replayed */
+	private boolean replaying = false;
 
 	private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
 	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
@@ -89,16 +167,217 @@ public class CJKSieveFilter extends TokenFilter
 	{
 		super(in);
 		this.emitType = emitType;
+		this.rulesSource = null;
+		this.stats = null;
+	}
+
+	/**
+	 * Create a new CJKSieveFilter, emitting tokens per the rules current at the
+	 * start of each value.  The rules are not changed part way through a value.
+	 * @param in
+	 * @param rulesSource supplies the {@link CJKSieveRules}
+	 */
+	public CJKSieveFilter(TokenStream in, CJKSieveRules.Source rulesSource)
+	{
+		this(in, rulesSource, null);
+	}
+
+	/**
+	 * Create a new CJKSieveFilter, emitting tokens per the rules current at the
+	 * start of each value, and counting the values and tokens emitted.
+	 * @param in
+	 * @param rulesSource supplies the {@link CJKSieveRules}
+	 * @param stats where the outcome for each value is counted;  may be null
+	 */
+	public CJKSieveFilter(TokenStream in, CJKSieveRules.Source rulesSource, SieveStatistics stats)
+	{
+		super(in);
+		this.rulesSource = rulesSource;
+		this.stats = stats;
+	}
+
+	/**
+	 * Use the script hints of the {@link ScriptHintCharFilter} at the start of
+	 * this filter's chain, which must offer them to the same channel.  The
+	 * hint for a value is taken from the channel when this filter is reset.
+	 * @param hintChannel the channel, or null to ignore char filter hints
+	 */
+	public void setCharFilterHints(ScriptHintChannel hintChannel)
+	{
+		this.hintChannel = hintChannel;
+	}
+
+	/**
+	 * Limit the tokens buffered, and the time spent buffering, for each value.
+	 * Without this, a filter with a {@link CJKSieveRules.Source} takes the
+	 * budget from the rules current at the start of each value.
+	 * @param maxTokens maximum number of tokens in a value;  0 for no limit
+	 * @param maxMillis maximum milliseconds, including the time of the filters
+	 *  and tokenizer before this one;  0 for no limit
+	 * @param fallback decides values that exceed the budget
+	 */
+	public void setBudget(int maxTokens, long maxMillis, BudgetFallback fallback)
+	{
+		if (maxTokens < 0 || maxMillis < 0)
+			throw new IllegalArgumentException("budget limits must not be negative");
+		this.maxTokens = maxTokens;
+		this.maxNanos = maxMillis * 1000000L;
+		this.budgetFallback = fallback;
+		budgetSet = true;
+	}
+
+	/**
+	 * If true, keep the result of each value so that it can be replayed with
+	 * {@link #replay()}.
+	 */
+	public void setReplayable(boolean replayable)
+	{
+		this.replayable = replayable;
+	}
+
+	/**
+	 * Make the next reset() replay the result of the value just consumed,
+	 * without resetting the input.  Only the next reset() is affected.
+	 * @throws IllegalStateException if the filter isn't replayable, or the
+	 *  value hasn't been consumed to the end
+	 */
+	public void replay()
+	{
+		if (!replayable || !decided || finalState == null)
+			throw new IllegalStateException("replay() needs a replayable filter whose value has been consumed to the end");
+		replayNext = true;
+	}
+
+	/**
+	 * Drop the buffered result of a replayable filter now, rather than at the
+	 * next reset().
+	 */
+	public void release()
+	{
+		cache = null;
+		iterator = null;
+		finalState = null;
+		decided = false;
+		replayNext = false;
+		replaying = false;
 	}
 
 	@Override
 	public final boolean incrementToken() throws IOException
 	{
+		if (replaying)
+		{
+			if (!iterator.hasNext())
+				return false;
+			restoreState(iterator.next());
+			return emit;
+		}
+
+		if (passThrough)
+		{
+			if (input.incrementToken())
+			{
+				passThroughTokens++;
+				if (replayable)
+					cache.add(captureState());
+				return true;
+			}
+			passThrough = false;
+			if (stats != null)
+			{
+				stats.recordValue(true, passThroughTokens);
+				if (!overBudget)
+					recordShadows(passThroughTokens);
+			}
+			if (!replayable)
+				cache = Collections.emptyList();
+			iterator = Collections.<AttributeSource.State>emptyList().iterator();
+			decided = true;
+			return false;
+		}
+
 		if (cache == null)
 		{
+			if (rulesSource != null)
+			{
+				CJKSieveRules rules = rulesSource.getRules();
+				emitType = rules.getEmitType();
+				shadowEmitTypes = rules.shadowEmitTypes();
+				if (!budgetSet)
+				{
+					maxTokens = rules.getMaxTokens();
+					maxNanos = rules.getMaxMillis() * 1000000L;
+					budgetFallback = rules.getBudgetFallback();
+				}
+			}
+
+			int hint = takeHint();
+			if (hint != ScriptHintAttribute.NO_HINT)
+			{
+				scriptMask = hint;
+				emit = CJKScriptClassifier.emits(emitType, scriptMask);
+				if (emit)
+				{
+					passThrough = true;
+					if (replayable)
+						cache = new LinkedList<AttributeSource.State>();
+					return incrementToken();
+				}
+				// consume the input without keeping anything
+				int numTokens = 0;
+				while (input.incrementToken())
+					numTokens++;
+				if (stats != null)
+				{
+					stats.recordValue(false, numTokens);
+					recordShadows(numTokens);
+				}
+				cache = Collections.emptyList();
+				iterator = cache.iterator();
+				decided = true;
+				return false;
+			}
+
 			// fill cache lazily
 			cache = new LinkedList<AttributeSource.State>();
-			fillCache();
+			if (fillCache())
+			{
+				emit = CJKScriptClassifier.emits(emitType, scriptMask);
+				if (stats != null)
+				{
+					stats.recordValue(emit, cache.size());
+					recordShadows(cache.size());
+				}
+				decided = true;
+			}
+			else
+			{
+				overBudget = true;
+				if (budgetFallback == BudgetFallback.SCRIPTS_SO_FAR)
+					emit = CJKScriptClassifier.emits(emitType, scriptMask);
+				else
+					emit = budgetFallback == BudgetFallback.EMIT;
+				int numTokens = cache.size();
+				if (!emit)
+				{
+					cache.clear();
+					// keep the final offset right, unless that could take too long
+					if (!outOfTime)
+					{
+						while (input.incrementToken())
+							numTokens++;
+					}
+				}
+				if (stats != null)
+				{
+					stats.recordBudgetExceeded();
+					// an emitted value is recorded when the rest of the input has passed through
+					if (!emit)
+						stats.recordValue(false, numTokens);
+				}
+				passThroughAfterCache = emit;
+				decided = !emit;
+			}
 			iterator = cache.iterator();
 		}
 
@@ -107,36 +386,15 @@ public class CJKSieveFilter extends TokenFilter
 			// Since the TokenFilter can be reset, the tokens need to be preserved as immutable.
 			restoreState(iterator.next());
 
-			switch (emitType)
-			{
-				case HANGUL:
-					if (tokensHaveHangul)
-						return true;
-					break;
-				case JAPANESE:
-					if (tokensHaveHiragana || tokensHaveKatakana)
-						return true;
-					break;
-				case HAN_SOLO:
-					if (tokensHaveHan &&
-							!tokensHaveHangul && !tokensHaveHiragana && !tokensHaveKatakana)
-						return true;
-					break;
-				case CJ:
-					if ( (tokensHaveHan || tokensHaveHiragana || tokensHaveKatakana) && !tokensHaveHangul)
-						return true;
-					break;
-				case ANY_CJK:
-					if (tokensHaveHan || tokensHaveHangul || tokensHaveHiragana || tokensHaveKatakana)
-						return true;
-					else
-						return false;
-				case NO_CJK:
-					if (! (tokensHaveHan || tokensHaveHangul || tokensHaveHiragana || tokensHaveKatakana))
-						return true;
-			}
+			return emit;
+		}
 
-			return false;
+		if (passThroughAfterCache)
+		{
+			passThroughAfterCache = false;
+			passThrough = true;
+			passThroughTokens = cache.size();
+			return incrementToken();
 		}
 
 		// else the cache is exhausted, return false
@@ -148,78 +406,108 @@ public class CJKSieveFilter extends TokenFilter
 	{
 		if (finalState != null)
 			restoreState(finalState);
+		if (replaying)
+			return;
 		super.end();
+		if (replayable && decided && finalState == null)
+			finalState = captureState();
 	}
 
 	@Override
 	public void reset() throws IOException
 	{
+		if (replayNext)
+		{
+			// rewind without touching the input
+			replayNext = false;
+			iterator = cache.iterator();
+			replaying = true;
+			return;
+		}
 	    super.reset();
+	    decided = false;
+	    replaying = false;
 	    cache = null;
 	    iterator = null;
 	    finalState = null;
+	    scriptMask = 0;
+	    passThrough = false;
+	    passThroughTokens = 0;
+	    passThroughAfterCache = false;
+	    overBudget = false;
+	    outOfTime = false;
+	    charFilterHint = hintChannel == null ? ScriptHintAttribute.NO_HINT : hintChannel.take();
 	}
 
-	private void fillCache() throws IOException
+	/**
+	 * @return the script mask of a token, from its StandardTokenizer type if possible
+	 */
+	static int tokenScriptMask(TypeAttribute typeAtt, CharTermAttribute termAtt)
 	{
-		while(input.incrementToken())
-		{
-			cache.add(captureState());
-			String type = typeAtt.type();
-			if (type == HAN_TYPE)
-				tokensHaveHan = true;
-			else if (type == HIRAGANA_TYPE)
-				tokensHaveHiragana = true;
-			else if (type == KATAKANA_TYPE)
-				tokensHaveKatakana = true;
-			else if (type == HANGUL_TYPE)
-				tokensHaveHangul = true;
-			else
-				// we have to do it the hard way
-				readCharsForScript(termAtt.toString());
-		}
-		// capture final state
-		input.end();
-		finalState = captureState();
+		String type = typeAtt.type();
+		if (type == HAN_TYPE)
+			return CJKScriptClassifier.HAN;
+		else if (type == HIRAGANA_TYPE)
+			return CJKScriptClassifier.HIRAGANA;
+		else if (type == KATAKANA_TYPE)
+			return CJKScriptClassifier.KATAKANA;
+		else if (type == HANGUL_TYPE)
+			return CJKScriptClassifier.HANGUL;
+		else
+			// we have to do it the hard way
+			return CJKScriptClassifier.scriptMask(termAtt.buffer(), 0, termAtt.length());
 	}
 
-	/** linear fast-path for basic latin case */
-	private static final int basicLatin[] = new int[128];
-
-	static {
-	  for (int i = 0; i < basicLatin.length; i++)
-	    basicLatin[i] = UScript.getScript(i);
+	/**
+	 * count the decisions the shadow emit types would make for the current value
+	 */
+	private void recordShadows(int numTokens)
+	{
+		for (CJKEmitType shadow : shadowEmitTypes)
+			stats.recordShadow(shadow, CJKScriptClassifier.emits(shadow, scriptMask), emit, numTokens);
 	}
 
-	/** fast version of UScript.getScript(). Basic Latin is an array lookup */
-	private static int getScript(int codepoint) {
-	  if (0 <= codepoint && codepoint < basicLatin.length)
-	    return basicLatin[codepoint];
-	  else
-	    return UScript.getScript(codepoint);
+	/**
+	 * @return the script hint for the current value, or NO_HINT
+	 */
+	private int takeHint()
+	{
+		int hint = ScriptHintAttribute.NO_HINT;
+		if (hasAttribute(ScriptHintAttribute.class))
+		{
+			ScriptHintAttribute hintAtt = getAttribute(ScriptHintAttribute.class);
+			hint = hintAtt.getScriptMask();
+			hintAtt.setScriptMask(ScriptHintAttribute.NO_HINT);
+		}
+		if (hint == ScriptHintAttribute.NO_HINT)
+			hint = charFilterHint;
+		charFilterHint = ScriptHintAttribute.NO_HINT;
+		return hint;
 	}
 
-	private void readCharsForScript(String term)
+	/**
+	 * @return false if buffering stopped because the value exceeded the budget
+	 */
+	private boolean fillCache() throws IOException
 	{
-		for (int i = 0; i < term.length(); i++)
+		long deadline = maxNanos > 0 ? System.nanoTime() + maxNanos : 0;
+		while(input.incrementToken())
 		{
-			int cp = term.codePointAt(i);
-			int script = getScript(cp);
-			switch (script) {
-				case UScript.HANGUL:
-					tokensHaveHangul = true;
-					break;
-				case UScript.HIRAGANA:
-					tokensHaveHiragana = true;
-					break;
-				case UScript.KATAKANA:
-					tokensHaveKatakana = true;
-					break;
-				case UScript.HAN:
-					tokensHaveHan = true;
-					break;
+			cache.add(captureState());
+			if (scriptMask != CJKScriptClassifier.ANY_CJK)
+				scriptMask |= tokenScriptMask(typeAtt, termAtt);
+			if (maxTokens > 0 && cache.size() > maxTokens)
+				return false;
+			if (deadline != 0 && System.nanoTime() - deadline > 0)
+			{
+				outOfTime = true;
+				return false;
 			}
 		}
+		// capture final state
+		input.end();
+		finalState = captureState();
+		return true;
 	}
 
 }
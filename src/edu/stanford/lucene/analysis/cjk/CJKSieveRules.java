@@ -0,0 +1,160 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+/**
+ * The settings that determine what a {@link CJKSieveFilter} emits.
+ * <p>
+ * Instances are immutable, so a new set of rules can be swapped in while
+ * filters are running:  a filter gets its rules from a {@link Source} at the
+ * start of each value, and uses them until it is reset.
+ *
+ */
+public final class CJKSieveRules
+{
+	private static final CJKEmitType[] NO_SHADOWS = new CJKEmitType[0];
+
+	/** under which conditions should the filter emit tokens? */
+	private final CJKEmitType emitType;
+	/** alternative emit types evaluated in shadow mode, without affecting the output */
+	private final CJKEmitType[] shadowEmitTypes;
+
+	// the per value budget;  0 for no limit
+	private final int maxTokens;
+	private final long maxMillis;
+	private final CJKSieveFilter.BudgetFallback budgetFallback;
+
+	public CJKSieveRules(CJKEmitType emitType)
+	{
+		this(emitType, NO_SHADOWS);
+	}
+
+	/**
+	 * @param emitType decides what the filter emits
+	 * @param shadowEmitTypes alternatives whose decisions are only counted, in
+	 *  the filter's {@link SieveStatistics}
+	 */
+	public CJKSieveRules(CJKEmitType emitType, CJKEmitType... shadowEmitTypes)
+	{
+		if (emitType == null)
+			throw new IllegalArgumentException("emitType must not be null");
+		for (CJKEmitType shadow : shadowEmitTypes)
+			if (shadow == null)
+				throw new IllegalArgumentException("shadow emit types must not be null");
+		this.emitType = emitType;
+		this.shadowEmitTypes = shadowEmitTypes.length == 0 ? NO_SHADOWS : shadowEmitTypes.clone();
+		maxTokens = 0;
+		maxMillis = 0;
+		budgetFallback = CJKSieveFilter.BudgetFallback.SCRIPTS_SO_FAR;
+	}
+
+	private CJKSieveRules(CJKSieveRules rules, int maxTokens, long maxMillis, CJKSieveFilter.BudgetFallback budgetFallback)
+	{
+		emitType = rules.emitType;
+		shadowEmitTypes = rules.shadowEmitTypes;
+		this.maxTokens = maxTokens;
+		this.maxMillis = maxMillis;
+		this.budgetFallback = budgetFallback;
+	}
+
+	/**
+	 * @param maxTokens maximum number of tokens in a value;  0 for no limit
+	 * @param maxMillis maximum milliseconds to spend buffering a value;  0 for no limit
+	 * @param budgetFallback decides values that exceed the budget
+	 * @return these rules, with a budget for each value
+	 * @see CJKSieveFilter#setBudget(int, long, CJKSieveFilter.BudgetFallback)
+	 */
+	public CJKSieveRules withBudget(int maxTokens, long maxMillis, CJKSieveFilter.BudgetFallback budgetFallback)
+	{
+		if (maxTokens < 0 || maxMillis < 0)
+			throw new IllegalArgumentException("budget limits must not be negative");
+		if (budgetFallback == null)
+			throw new IllegalArgumentException("budgetFallback must not be null");
+		return new CJKSieveRules(this, maxTokens, maxMillis, budgetFallback);
+	}
+
+	public CJKEmitType getEmitType()
+	{
+		return emitType;
+	}
+
+	/**
+	 * @return true if there are shadow emit types to evaluate
+	 */
+	public boolean hasShadows()
+	{
+		return shadowEmitTypes.length > 0;
+	}
+
+	/**
+	 * @return the shadow emit types;  the array must not be modified
+	 */
+	CJKEmitType[] shadowEmitTypes()
+	{
+		return shadowEmitTypes;
+	}
+
+	/**
+	 * @return a copy of the shadow emit types
+	 */
+	public CJKEmitType[] getShadowEmitTypes()
+	{
+		return shadowEmitTypes.clone();
+	}
+
+	/**
+	 * @return maximum number of tokens in a value;  0 for no limit
+	 */
+	public int getMaxTokens()
+	{
+		return maxTokens;
+	}
+
+	/**
+	 * @return maximum milliseconds to spend buffering a value;  0 for no limit
+	 */
+	public long getMaxMillis()
+	{
+		return maxMillis;
+	}
+
+	public CJKSieveFilter.BudgetFallback getBudgetFallback()
+	{
+		return budgetFallback;
+	}
+
+	/**
+	 * Supplies the current rules to a CJKSieveFilter.  Called once per value
+	 * by each filter, from the thread consuming the filter, so it must be
+	 * thread safe and cheap.
+	 */
+	public interface Source
+	{
+		CJKSieveRules getRules();
+	}
+}
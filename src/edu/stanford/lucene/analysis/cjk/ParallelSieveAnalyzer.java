@@ -0,0 +1,359 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharStream;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.*;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.index.Payload;
+
+/**
+ * Tokenizes and sieves very large values in parallel.
+ * <p>
+ * A value longer than chunkSize chars is split into chunks of about chunkSize
+ * chars at safe boundaries:  whitespace or sentence ending punctuation near
+ * the chunk end.  Each chunk is analyzed by chunkAnalyzer (the tokenizer and
+ * any filters that belong before the sieve) on the executor, and the scripts
+ * found in all the chunks decide, as for {@link CJKSieveFilter}, whether the
+ * value's tokens are emitted.  Emitted tokens are in their original order,
+ * with offsets relative to the whole value.
+ * <p>
+ * The calling thread analyzes the first chunk itself.  Values no longer than
+ * chunkSize are analyzed entirely on the calling thread.  If no boundary is
+ * found near a chunk end, the value is split within a run of text, which may
+ * change the tokens produced at that point.
+ * <p>
+ * Only the term, offsets, position increment, type and payload of each token
+ * are kept.
+ *
+ */
+public final class ParallelSieveAnalyzer extends Analyzer
+{
+	/** how far past the nominal chunk end to look for a boundary, as a fraction of the chunk size */
+	private static final int LOOKAHEAD_DIVISOR = 4;
+
+	private final Analyzer chunkAnalyzer;
+	private final CJKEmitType emitType;
+	private final ExecutorService executor;
+	private final int chunkSize;
+
+	/**
+	 * @param chunkAnalyzer analyzes each chunk;  must not include the sieve
+	 * @param emitType from {@link CJKEmitType}
+	 * @param executor runs the chunk analyses
+	 * @param chunkSize nominal chunk length, in chars;  at least 2, so a chunk
+	 *  always holds a whole surrogate pair
+	 */
+	public ParallelSieveAnalyzer(Analyzer chunkAnalyzer, CJKEmitType emitType, ExecutorService executor, int chunkSize)
+	{
+		if (chunkSize < 2)
+			throw new IllegalArgumentException("chunkSize must be at least 2");
+		this.chunkAnalyzer = chunkAnalyzer;
+		this.emitType = emitType;
+		this.executor = executor;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public final TokenStream tokenStream(String fieldName, Reader reader)
+	{
+		return new ParallelSieveStream(fieldName, reader);
+	}
+
+	@Override
+	public final TokenStream reusableTokenStream(String fieldName, Reader reader) throws IOException
+	{
+		return tokenStream(fieldName, reader);
+	}
+
+	@Override
+	public int getPositionIncrementGap(String fieldName)
+	{
+		return chunkAnalyzer.getPositionIncrementGap(fieldName);
+	}
+
+	@Override
+	public int getOffsetGap(Fieldable field)
+	{
+		return chunkAnalyzer.getOffsetGap(field);
+	}
+
+	/**
+	 * @return the start of each chunk of text, followed by text.length()
+	 */
+	int[] chunkBoundaries(String text)
+	{
+		List<Integer> starts = new ArrayList<Integer>();
+		int start = 0;
+		int length = text.length();
+		starts.add(0);
+		while (length - start > chunkSize)
+		{
+			int end = start + chunkSize;
+			int limit = Math.min(length, end + Math.max(1, chunkSize / LOOKAHEAD_DIVISOR));
+			int boundary = -1;
+			for (int i = end; i < limit; i++)
+			{
+				if (isBoundary(text.charAt(i)))
+				{
+					boundary = i + 1;
+					break;
+				}
+			}
+			if (boundary == -1)
+			{
+				boundary = end;
+				if (Character.isLowSurrogate(text.charAt(boundary)))
+					boundary--;
+			}
+			if (boundary >= length)
+				break;
+			starts.add(boundary);
+			start = boundary;
+		}
+		int[] result = new int[starts.size() + 1];
+		for (int i = 0; i < starts.size(); i++)
+			result[i] = starts.get(i);
+		result[starts.size()] = length;
+		return result;
+	}
+
+	private static boolean isBoundary(char c)
+	{
+		switch (c)
+		{
+			case '。':  // ideographic full stop
+			case '．':  // fullwidth full stop
+			case '！':  // fullwidth exclamation mark
+			case '？':  // fullwidth question mark
+			case '!':
+			case '?':
+				return true;
+			default:
+				return Character.isWhitespace(c);
+		}
+	}
+
+
+	/** the tokens and scripts of one chunk */
+	private static final class ChunkResult
+	{
+		final AnalyzedTokenCache.Entry tokens = new AnalyzedTokenCache.Entry(64);
+		int scriptMask = 0;
+	}
+
+	/** analyzes one chunk */
+	private final class ChunkTask implements Callable<ChunkResult>
+	{
+		private final String fieldName;
+		private final String text;
+
+		ChunkTask(String fieldName, String text)
+		{
+			this.fieldName = fieldName;
+			this.text = text;
+		}
+
+		public ChunkResult call() throws IOException
+		{
+			ChunkResult result = new ChunkResult();
+			TokenStream ts = chunkAnalyzer.reusableTokenStream(fieldName, new StringReader(text));
+			CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+			OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+			PositionIncrementAttribute posIncAtt = ts.addAttribute(PositionIncrementAttribute.class);
+			TypeAttribute typeAtt = ts.addAttribute(TypeAttribute.class);
+			PayloadAttribute payloadAtt = ts.addAttribute(PayloadAttribute.class);
+			ts.reset();
+			while (ts.incrementToken())
+			{
+				if (result.scriptMask != CJKScriptClassifier.ANY_CJK)
+					result.scriptMask |= CJKSieveFilter.tokenScriptMask(typeAtt, termAtt);
+				Payload payload = payloadAtt.getPayload();
+				result.tokens.add(termAtt.toString(), offsetAtt.startOffset(), offsetAtt.endOffset(),
+						posIncAtt.getPositionIncrement(), typeAtt.type(), payload == null ? null : payload.toByteArray());
+			}
+			ts.end();
+			result.tokens.finalOffset = offsetAtt.endOffset();
+			ts.close();
+			return result;
+		}
+	}
+
+
+	/**
+	 * Splits the value into chunks, analyzes them, and emits the tokens of all
+	 * the chunks if the sieve allows.
+	 */
+	private final class ParallelSieveStream extends TokenStream
+	{
+		private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+		private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+		private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+		private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+		private final PayloadAttribute payloadAtt = addAttribute(PayloadAttribute.class);
+
+		private final String fieldName;
+		private Reader reader;
+		/** the reader, if offsets need to be corrected for char filters */
+		private final CharStream charStream;
+		private boolean started = false;
+
+		private ChunkResult[] chunks;
+		private int[] chunkStarts;
+		private boolean emit;
+		private int chunk = 0;
+		private int upto = 0;
+		private int finalOffset = 0;
+
+		ParallelSieveStream(String fieldName, Reader reader)
+		{
+			this.fieldName = fieldName;
+			this.reader = reader;
+			this.charStream = reader instanceof CharStream ? (CharStream) reader : null;
+		}
+
+		@Override
+		public boolean incrementToken() throws IOException
+		{
+			if (!started)
+				analyze();
+
+			clearAttributes();
+			if (chunks == null || !emit)
+				return false;
+			while (chunk < chunks.length && upto >= chunks[chunk].tokens.size)
+			{
+				chunk++;
+				upto = 0;
+			}
+			if (chunk == chunks.length)
+				return false;
+
+			AnalyzedTokenCache.Entry tokens = chunks[chunk].tokens;
+			int offsetDelta = chunkStarts[chunk];
+			termAtt.setEmpty().append(tokens.terms[upto]);
+			offsetAtt.setOffset(correctOffset(tokens.startOffsets[upto] + offsetDelta), correctOffset(tokens.endOffsets[upto] + offsetDelta));
+			posIncAtt.setPositionIncrement(tokens.posIncs[upto]);
+			typeAtt.setType(tokens.types[upto]);
+			if (tokens.payloads[upto] != null)
+				payloadAtt.setPayload(new Payload(tokens.payloads[upto]));
+			upto++;
+			return true;
+		}
+
+		@Override
+		public void end() throws IOException
+		{
+			if (!started)
+				analyze();
+			int offset = correctOffset(finalOffset);
+			offsetAtt.setOffset(offset, offset);
+		}
+
+		@Override
+		public void reset() throws IOException
+		{
+			chunk = 0;
+			upto = 0;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if (reader != null)
+				reader.close();
+		}
+
+		private int correctOffset(int offset)
+		{
+			return charStream == null ? offset : charStream.correctOffset(offset);
+		}
+
+		private void analyze() throws IOException
+		{
+			// don't try again if reading the value fails
+			started = true;
+			StringBuilder sb = new StringBuilder();
+			char[] buf = new char[4096];
+			int len;
+			while ((len = reader.read(buf)) != -1)
+				sb.append(buf, 0, len);
+			reader.close();
+			reader = null;
+			String text = sb.toString();
+
+			chunkStarts = chunkBoundaries(text);
+			int numChunks = chunkStarts.length - 1;
+			chunks = new ChunkResult[numChunks];
+
+			List<Future<ChunkResult>> futures = new ArrayList<Future<ChunkResult>>(numChunks);
+			for (int i = 1; i < numChunks; i++)
+				futures.add(executor.submit(new ChunkTask(fieldName, text.substring(chunkStarts[i], chunkStarts[i + 1]))));
+			try
+			{
+				chunks[0] = new ChunkTask(fieldName, text.substring(chunkStarts[0], chunkStarts[1])).call();
+				for (int i = 1; i < numChunks; i++)
+					chunks[i] = futures.get(i - 1).get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted while analyzing chunks of " + fieldName);
+			}
+			catch (ExecutionException e)
+			{
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				throw new RuntimeException(cause);
+			}
+			finally
+			{
+				for (Future<ChunkResult> future : futures)
+					future.cancel(false);
+			}
+
+			int scriptMask = 0;
+			for (ChunkResult result : chunks)
+				scriptMask |= result.scriptMask;
+			emit = CJKScriptClassifier.emits(emitType, scriptMask);
+			finalOffset = chunkStarts[numChunks - 1] + chunks[numChunks - 1].tokens.finalOffset;
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+
+/**
+ * Sends only the tokens whose scripts match a condition through an inner
+ * chain of filters;  all other tokens pass straight through, unchanged and
+ * with their position increments preserved.
+ * <p>
+ * The condition uses the {@link CJKEmitType} vocabulary, applied to the
+ * scripts of each token rather than of the whole value:  e.g. with ANY_CJK,
+ * only tokens containing Han, Hiragana, Katakana or Hangul characters are
+ * sent to the inner chain.
+ * <p>
+ * Each run of adjacent matching tokens is given to the inner chain as if it
+ * were a whole stream, so filters that look at neighboring tokens (such as
+ * CJKBigramFilter) see only the tokens of one run.  The inner chain is reset
+ * between runs, and its end() is not called;  the offsets at the end of the
+ * stream come from the outer input.
+ * <pre>
+ *   TokenStream ts = new ScriptConditionFilter(tokenizer, CJKEmitType.ANY_CJK, new ScriptConditionFilter.InnerChain()
+ *   {
+ *     public TokenStream create(TokenStream matching)
+ *     {
+ *       return new CJKBigramFilter(matching);
+ *     }
+ *   });
+ * </pre>
+ *
+ */
+public final class ScriptConditionFilter extends TokenFilter
+{
+	/** Builds the filters that process matching tokens */
+	public interface InnerChain
+	{
+		/**
+		 * @param matching the stream of matching tokens;  it shares its
+		 *  attributes with the ScriptConditionFilter
+		 * @return the last filter of the inner chain
+		 */
+		TokenStream create(TokenStream matching);
+	}
+
+	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+	private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+
+	private final CJKEmitType condition;
+	private final TokenStream inner;
+
+	/** the inner chain is producing tokens */
+	private boolean inRun = false;
+	/** a token read from the input but not yet returned, by the gate or by this filter */
+	private State held;
+	private boolean inputExhausted = false;
+
+	/**
+	 * @param in the input stream
+	 * @param condition which tokens are sent to the inner chain
+	 * @param innerChain builds the filters the matching tokens go through
+	 */
+	public ScriptConditionFilter(TokenStream in, CJKEmitType condition, InnerChain innerChain)
+	{
+		super(in);
+		this.condition = condition;
+		inner = innerChain.create(new Gate());
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException
+	{
+		while (true)
+		{
+			if (inRun)
+			{
+				if (inner.incrementToken())
+					return true;
+				// the gate hit a token that doesn't match, or the end of the input
+				inRun = false;
+				inner.reset();
+			}
+
+			if (held != null)
+			{
+				restoreState(held);
+				held = null;
+			}
+			else if (inputExhausted || !input.incrementToken())
+			{
+				inputExhausted = true;
+				return false;
+			}
+
+			if (!matches())
+				return true;
+
+			// the gate returns this token first
+			held = captureState();
+			inRun = true;
+		}
+	}
+
+	@Override
+	public void reset() throws IOException
+	{
+		super.reset();
+		inner.reset();
+		inRun = false;
+		held = null;
+		inputExhausted = false;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		inner.close();
+		super.close();
+	}
+
+	/**
+	 * @return true if the scripts of the current token satisfy the condition
+	 */
+	private boolean matches()
+	{
+		return CJKScriptClassifier.emits(condition, CJKSieveFilter.tokenScriptMask(typeAtt, termAtt));
+	}
+
+
+	/**
+	 * The input of the inner chain:  returns tokens from the outer input as
+	 * long as they match, then ends the run, holding the non-matching token
+	 * for the outer filter.
+	 */
+	private final class Gate extends TokenStream
+	{
+		Gate()
+		{
+			super(ScriptConditionFilter.this);
+		}
+
+		@Override
+		public boolean incrementToken() throws IOException
+		{
+			if (held != null)
+			{
+				clearAttributes();
+				restoreState(held);
+				held = null;
+				return true;
+			}
+			if (inputExhausted || !input.incrementToken())
+			{
+				inputExhausted = true;
+				return false;
+			}
+			if (matches())
+				return true;
+			held = captureState();
+			return false;
+		}
+
+		// the outer filter resets, ends and closes the input
+
+		@Override
+		public void reset()
+		{
+		}
+
+		@Override
+		public void end()
+		{
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import org.apache.lucene.util.Attribute;
+
+/**
+ * A script hint for the value being analyzed, as a {@link CJKScriptClassifier}
+ * script mask.  When a hint is present, {@link CJKSieveFilter} trusts it
+ * instead of buffering and scanning the tokens.
+ * <p>
+ * The hint belongs to the whole value, not to a token:  it is not cleared by
+ * clearAttributes().  CJKSieveFilter removes the hint when it reads it, so a
+ * hint set on a reused stream only applies to the next value.
+ *
+ */
+public interface ScriptHintAttribute extends Attribute
+{
+	/** the value of a script mask when there is no hint */
+	public static final int NO_HINT = -1;
+
+	/**
+	 * @return the hinted script mask, or NO_HINT
+	 */
+	public int getScriptMask();
+
+	/**
+	 * @param scriptMask the script mask of the value, or NO_HINT
+	 */
+	public void setScriptMask(int scriptMask);
+}
@@ -0,0 +1,82 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeReflector;
+
+/**
+ * Default implementation of {@link ScriptHintAttribute}.
+ *
+ */
+public class ScriptHintAttributeImpl extends AttributeImpl implements ScriptHintAttribute
+{
+	private static final long serialVersionUID = 1L;
+
+	private int scriptMask = NO_HINT;
+
+	public int getScriptMask()
+	{
+		return scriptMask;
+	}
+
+	public void setScriptMask(int scriptMask)
+	{
+		this.scriptMask = scriptMask;
+	}
+
+	/** the hint applies to the whole value, so it is not cleared between tokens */
+	@Override
+	public void clear()
+	{
+	}
+
+	@Override
+	public void copyTo(AttributeImpl target)
+	{
+		((ScriptHintAttribute) target).setScriptMask(scriptMask);
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		return other instanceof ScriptHintAttributeImpl && ((ScriptHintAttributeImpl) other).scriptMask == scriptMask;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return scriptMask;
+	}
+
+	@Override
+	public void reflectWith(AttributeReflector reflector)
+	{
+		reflector.reflect(ScriptHintAttribute.class, "scriptMask", scriptMask);
+	}
+}
@@ -0,0 +1,129 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Carries the script hint found by a {@link ScriptHintCharFilter} to the
+ * {@link CJKSieveFilter} of the same analysis chain.  Char filters and token
+ * filters share no other state, so both are given the same channel;  use a
+ * separate channel for each chain (e.g. each fieldType).
+ * <p>
+ * The hint is kept per thread, since a thread analyzes one value of a chain
+ * at a time.  Every ScriptHintCharFilter replaces its thread's hint, even for
+ * a value without a marker, and withdraws it when it is closed;  the sieve
+ * takes the hint when it is reset for the value.  So a hint is never applied
+ * to a later value, even one of another chain sharing the channel.
+ *
+ */
+public final class ScriptHintChannel
+{
+	private static final ConcurrentMap<String, ScriptHintChannel> registry = new ConcurrentHashMap<String, ScriptHintChannel>();
+
+	/** the hint for the value most recently started on each thread */
+	private final ThreadLocal<Pending> pendingHint = new ThreadLocal<Pending>()
+	{
+		@Override
+		protected Pending initialValue()
+		{
+			return new Pending();
+		}
+	};
+
+	/**
+	 * a channel for one chain;  use {@link #forName(String)} where the char
+	 * filter and the sieve are configured separately
+	 */
+	public ScriptHintChannel()
+	{
+	}
+
+	/**
+	 * @return the channel with the given name, creating it if necessary
+	 */
+	public static ScriptHintChannel forName(String name)
+	{
+		ScriptHintChannel channel = registry.get(name);
+		if (channel == null)
+		{
+			ScriptHintChannel newChannel = new ScriptHintChannel();
+			channel = registry.putIfAbsent(name, newChannel);
+			if (channel == null)
+				channel = newChannel;
+		}
+		return channel;
+	}
+
+	/**
+	 * set this thread's hint for the value being started
+	 * @param source the char filter reading the value
+	 * @param scriptMask the hint, or ScriptHintAttribute.NO_HINT
+	 */
+	void offer(Object source, int scriptMask)
+	{
+		Pending pending = pendingHint.get();
+		pending.source = source;
+		pending.scriptMask = scriptMask;
+	}
+
+	/**
+	 * drop this thread's hint if it is still the one offered by source
+	 */
+	void withdraw(Object source)
+	{
+		Pending pending = pendingHint.get();
+		if (pending.source == source)
+			pending.clear();
+	}
+
+	/**
+	 * @return this thread's hint, if it hasn't been taken or withdrawn;  otherwise NO_HINT
+	 */
+	int take()
+	{
+		Pending pending = pendingHint.get();
+		int scriptMask = pending.scriptMask;
+		pending.clear();
+		return scriptMask;
+	}
+
+	/** a thread's hint, and the char filter that offered it */
+	private static final class Pending
+	{
+		Object source = null;
+		int scriptMask = ScriptHintAttribute.NO_HINT;
+
+		void clear()
+		{
+			source = null;
+			scriptMask = ScriptHintAttribute.NO_HINT;
+		}
+	}
+}
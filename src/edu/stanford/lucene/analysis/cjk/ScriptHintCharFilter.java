@@ -0,0 +1,191 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.BaseCharFilter;
+import org.apache.lucene.analysis.CharStream;
+
+/**
+ * Removes a script hint marker from the start of a value and passes the hint
+ * through a {@link ScriptHintChannel} to the {@link CJKSieveFilter} analyzing
+ * the value, which must be given the same channel with
+ * {@link CJKSieveFilter#setCharFilterHints(ScriptHintChannel)}.
+ * <p>
+ * The marker is "[[sieve:" followed by a comma separated list of names and
+ * "]]", e.g. "[[sieve:kor]]한국경제" or "[[sieve:han,hiragana]]...".  Names are:
+ * <ul>
+ *  <li>scripts:  han, hiragana, katakana, hangul</li>
+ *  <li>languages (MARC / ISO 639-2 codes):  jpn (Han + Hiragana), kor (Hangul), chi and zho (Han)</li>
+ *  <li>none:  no CJK script characters</li>
+ * </ul>
+ * A value without a valid marker is passed through unchanged, and the sieve
+ * scans its tokens as usual.  Offsets are corrected for the removed marker.
+ * <p>
+ * The hint is offered to the channel when this filter is created, and
+ * withdrawn when it is closed if no sieve has taken it.
+ *
+ */
+public final class ScriptHintCharFilter extends BaseCharFilter
+{
+	public static final String MARKER_START = "[[sieve:";
+	public static final String MARKER_END = "]]";
+	private static final int MAX_MARKER_LENGTH = 64;
+
+	/** chars read while looking for the marker that are part of the value */
+	private final char[] pending;
+	private int pendingPos = 0;
+	private final int scriptMask;
+	private final ScriptHintChannel channel;
+
+	/**
+	 * @param in
+	 * @param channel where the hint for the value, or NO_HINT, is offered to the sieve
+	 */
+	public ScriptHintCharFilter(CharStream in, ScriptHintChannel channel) throws IOException
+	{
+		super(in);
+
+		char[] prefix = new char[MAX_MARKER_LENGTH];
+		int len = 0;
+		int markerLength = 0;
+		// read until we know whether or not there's a marker
+		while (len < MAX_MARKER_LENGTH)
+		{
+			int c = in.read();
+			if (c == -1)
+				break;
+			prefix[len++] = (char) c;
+			if (len <= MARKER_START.length())
+			{
+				if (c != MARKER_START.charAt(len - 1))
+					break;
+			}
+			else if (len >= MARKER_START.length() + MARKER_END.length()
+					&& prefix[len - 2] == MARKER_END.charAt(0) && prefix[len - 1] == MARKER_END.charAt(1))
+			{
+				markerLength = len;
+				break;
+			}
+		}
+
+		int mask = ScriptHintAttribute.NO_HINT;
+		if (markerLength > 0)
+		{
+			String names = new String(prefix, MARKER_START.length(), markerLength - MARKER_START.length() - MARKER_END.length());
+			mask = scriptMaskForHint(names);
+		}
+		if (mask == ScriptHintAttribute.NO_HINT)
+			pending = copyOf(prefix, 0, len);
+		else
+		{
+			pending = copyOf(prefix, markerLength, len);
+			addOffCorrectMap(0, markerLength);
+		}
+		scriptMask = mask;
+		this.channel = channel;
+		channel.offer(this, mask);
+	}
+
+	private static char[] copyOf(char[] chars, int from, int to)
+	{
+		char[] result = new char[to - from];
+		System.arraycopy(chars, from, result, 0, result.length);
+		return result;
+	}
+
+	/**
+	 * @return the script mask from the marker, or ScriptHintAttribute.NO_HINT
+	 */
+	public int getScriptMask()
+	{
+		return scriptMask;
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException
+	{
+		if (pendingPos < pending.length)
+		{
+			int n = Math.min(len, pending.length - pendingPos);
+			System.arraycopy(pending, pendingPos, cbuf, off, n);
+			pendingPos += n;
+			return n;
+		}
+		return input.read(cbuf, off, len);
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		if (pendingPos < pending.length)
+			return pending[pendingPos++];
+		return input.read();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		channel.withdraw(this);
+		super.close();
+	}
+
+	@Override
+	public boolean markSupported()
+	{
+		return false;
+	}
+
+	/**
+	 * @param names comma separated script, language or "none" names
+	 * @return the script mask for the names, or ScriptHintAttribute.NO_HINT if
+	 *  any name is not recognized
+	 */
+	public static int scriptMaskForHint(String names)
+	{
+		int mask = 0;
+		for (String name : names.split(","))
+		{
+			name = name.trim();
+			if (name.equals("han") || name.equals("chi") || name.equals("zho"))
+				mask |= CJKScriptClassifier.HAN;
+			else if (name.equals("hiragana"))
+				mask |= CJKScriptClassifier.HIRAGANA;
+			else if (name.equals("katakana"))
+				mask |= CJKScriptClassifier.KATAKANA;
+			else if (name.equals("hangul") || name.equals("kor"))
+				mask |= CJKScriptClassifier.HANGUL;
+			else if (name.equals("jpn"))
+				mask |= CJKScriptClassifier.HAN | CJKScriptClassifier.HIRAGANA;
+			else if (!name.equals("none"))
+				return ScriptHintAttribute.NO_HINT;
+		}
+		return mask;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+/**
+ * Chooses a routing key for a document from the CJK scripts in its values,
+ * e.g. to send documents needing CJK analysis to cores or shards sized for it.
+ * <p>
+ * Routes are tried in order, and the first whose {@link CJKEmitType} would
+ * emit the document's combined script mask gives the key;  if none does, the
+ * default key is used.  For example, routes hangul:ko, japanese:ja,
+ * any_cjk:cjk, no_cjk:latin send a value with both Hangul and kana to ko.
+ * <p>
+ * With minChars greater than 1, a script counts toward the mask only if the
+ * document has at least that many of its code points, so a stray character
+ * doesn't send a Latin document to a CJK route.
+ * <p>
+ * Immutable and thread safe.
+ *
+ */
+public final class ScriptRouter
+{
+	private final CJKEmitType[] emitTypes;
+	private final String[] keys;
+	private final String defaultKey;
+	private final int minChars;
+
+	/**
+	 * @param emitTypes the condition for each route, tried in order
+	 * @param keys the key for each route;  the same length as emitTypes
+	 * @param defaultKey the key if no route matches;  may be null
+	 */
+	public ScriptRouter(CJKEmitType[] emitTypes, String[] keys, String defaultKey)
+	{
+		this(emitTypes, keys, defaultKey, 1);
+	}
+
+	/**
+	 * @param emitTypes the condition for each route, tried in order
+	 * @param keys the key for each route;  the same length as emitTypes
+	 * @param defaultKey the key if no route matches;  may be null
+	 * @param minChars the number of code points of a script needed for it to count
+	 */
+	public ScriptRouter(CJKEmitType[] emitTypes, String[] keys, String defaultKey, int minChars)
+	{
+		if (emitTypes.length != keys.length)
+			throw new IllegalArgumentException("emitTypes and keys must be the same length");
+		if (minChars < 1)
+			throw new IllegalArgumentException("minChars must be at least 1");
+		this.emitTypes = emitTypes.clone();
+		this.keys = keys.clone();
+		this.defaultKey = defaultKey;
+		this.minChars = minChars;
+	}
+
+	/**
+	 * @param values the values of a document;  nulls are ignored
+	 * @return the key of the first matching route, or the default key
+	 */
+	public String route(CharSequence... values)
+	{
+		return route(scriptMask(values));
+	}
+
+	/**
+	 * @param mask a {@link CJKScriptClassifier} script mask
+	 * @return the key of the first matching route, or the default key
+	 */
+	public String route(int mask)
+	{
+		for (int i = 0; i < emitTypes.length; i++)
+		{
+			if (CJKScriptClassifier.emits(emitTypes[i], mask))
+				return keys[i];
+		}
+		return defaultKey;
+	}
+
+	/**
+	 * @return the script mask of the values combined, counting only scripts
+	 *  with at least minChars code points
+	 */
+	public int scriptMask(CharSequence... values)
+	{
+		if (minChars == 1)
+		{
+			int mask = 0;
+			for (CharSequence value : values)
+			{
+				if (value != null)
+					mask |= CJKScriptClassifier.scriptMask(value);
+				if (mask == CJKScriptClassifier.ANY_CJK)
+					break;
+			}
+			return mask;
+		}
+
+		int[] counts = new int[CJKScriptClassifier.NUM_COUNTS];
+		CJKScriptClassifier.countScripts(values, counts);
+		int mask = 0;
+		if (counts[CJKScriptClassifier.HAN_INDEX] >= minChars)
+			mask |= CJKScriptClassifier.HAN;
+		if (counts[CJKScriptClassifier.HIRAGANA_INDEX] >= minChars)
+			mask |= CJKScriptClassifier.HIRAGANA;
+		if (counts[CJKScriptClassifier.KATAKANA_INDEX] >= minChars)
+			mask |= CJKScriptClassifier.KATAKANA;
+		if (counts[CJKScriptClassifier.HANGUL_INDEX] >= minChars)
+			mask |= CJKScriptClassifier.HANGUL;
+		return mask;
+	}
+
+	/**
+	 * @return the keys of the routes, in order, followed by the default key if not null
+	 */
+	public String[] getKeys()
+	{
+		if (defaultKey == null)
+			return keys.clone();
+		String[] result = new String[keys.length + 1];
+		System.arraycopy(keys, 0, result, 0, keys.length);
+		result[keys.length] = defaultKey;
+		return result;
+	}
+}
@@ -0,0 +1,158 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.ibm.icu.lang.UScript;
+
+/**
+ * An immutable set of ICU {@link UScript} codes, kept as a bitset of a few
+ * longs.
+ *
+ */
+public final class ScriptSet
+{
+	/** the number of longs needed for a bit per script code */
+	static final int WORDS = (UScript.CODE_LIMIT + 63) >>> 6;
+
+	public static final ScriptSet EMPTY = new ScriptSet(new long[WORDS]);
+
+	private final long[] bits;
+
+	private ScriptSet(long[] bits)
+	{
+		this.bits = bits;
+	}
+
+	/**
+	 * @param codes UScript codes, e.g. UScript.THAI
+	 */
+	public static ScriptSet of(int... codes)
+	{
+		long[] bits = new long[WORDS];
+		for (int code : codes)
+		{
+			if (code < 0 || code >= UScript.CODE_LIMIT)
+				throw new IllegalArgumentException("not a UScript code: " + code);
+			bits[code >>> 6] |= 1L << code;
+		}
+		return new ScriptSet(bits);
+	}
+
+	/**
+	 * @param names script names or ISO 15924 codes, as accepted by
+	 *  {@link UScript#getCode(String)}, e.g. "Thai", "Khmr"
+	 * @throws IllegalArgumentException if a name is not a script
+	 */
+	public static ScriptSet forNames(String... names)
+	{
+		List<Integer> codes = new ArrayList<Integer>();
+		for (String name : names)
+		{
+			int[] nameCodes = UScript.getCode(name);
+			if (nameCodes == null || nameCodes.length == 0)
+				throw new IllegalArgumentException("unknown script: " + name);
+			for (int code : nameCodes)
+				codes.add(code);
+		}
+		int[] result = new int[codes.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = codes.get(i);
+		return of(result);
+	}
+
+	public boolean contains(int code)
+	{
+		return code >= 0 && code < UScript.CODE_LIMIT && (bits[code >>> 6] & (1L << code)) != 0;
+	}
+
+	public boolean isEmpty()
+	{
+		for (long word : bits)
+			if (word != 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * @param seen a bitset of WORDS longs, as kept by ScriptSieveFilter
+	 * @return true if any script in this set is also in seen
+	 */
+	boolean intersects(long[] seen)
+	{
+		for (int i = 0; i < WORDS; i++)
+			if ((bits[i] & seen[i]) != 0)
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return the UScript codes in the set, in increasing order
+	 */
+	public int[] getCodes()
+	{
+		List<Integer> codes = new ArrayList<Integer>();
+		for (int code = 0; code < UScript.CODE_LIMIT; code++)
+			if (contains(code))
+				codes.add(code);
+		int[] result = new int[codes.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = codes.get(i);
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		if (!(other instanceof ScriptSet))
+			return false;
+		return Arrays.equals(bits, ((ScriptSet) other).bits);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Arrays.hashCode(bits);
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder("[");
+		for (int code : getCodes())
+		{
+			if (sb.length() > 1)
+				sb.append(',');
+			sb.append(UScript.getName(code));
+		}
+		return sb.append(']').toString();
+	}
+}
@@ -0,0 +1,249 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.AttributeSource;
+
+import com.ibm.icu.lang.UScript;
+
+/**
+ * Emits a value's tokens only if the scripts of its characters satisfy a
+ * {@link ScriptSieveRule}:  a generalization of {@link CJKSieveFilter} to any
+ * set of Unicode scripts, e.g. to send only Thai values to a Thai
+ * dictionary-based chain.
+ * <p>
+ * The scripts of each token's characters are collected in a bitset over all
+ * ICU {@link UScript} codes as the value is buffered.  Buffering stops as soon
+ * as the rule's decision can't change:  once a noneOf script is seen, the rest
+ * of the input is consumed without being kept;  once an anyOf script is seen
+ * and the rule has no noneOf scripts, the buffered tokens are emitted,
+ * followed by the rest of the input, unbuffered.
+ * <p>
+ * As in CJKSieveFilter, a token with one of the StandardTokenizer CJK types
+ * has that script, whatever its characters;  otherwise characters have the
+ * script given by UScript.getScript, so digits and punctuation are Common,
+ * and combining marks are Inherited.
+ *
+ */
+public final class ScriptSieveFilter extends TokenFilter
+{
+	private final ScriptSieveRule rule;
+	/** if not null, where the outcome for each value is counted */
+	private final SieveStatistics stats;
+
+	// the CJK token types from StandardTokenizer
+	private static final String HAN_TYPE = StandardTokenizer.TOKEN_TYPES[StandardTokenizer.IDEOGRAPHIC];
+	private static final String HIRAGANA_TYPE = StandardTokenizer.TOKEN_TYPES[StandardTokenizer.HIRAGANA];
+	private static final String KATAKANA_TYPE = StandardTokenizer.TOKEN_TYPES[StandardTokenizer.KATAKANA];
+	private static final String HANGUL_TYPE = StandardTokenizer.TOKEN_TYPES[StandardTokenizer.HANGUL];
+
+	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+	private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+
+	/** the scripts seen in the current value */
+	private final long[] seen = new long[ScriptSet.WORDS];
+
+	/** has the value been decided? */
+	private boolean decided = false;
+	/** after the buffered tokens, pass the rest of the input through */
+	private boolean passThrough = false;
+	private int numTokens = 0;
+
+	private final List<AttributeSource.State> cache = new LinkedList<AttributeSource.State>();
+	private Iterator<AttributeSource.State> iterator;
+	private AttributeSource.State finalState;
+
+	public ScriptSieveFilter(TokenStream in, ScriptSieveRule rule)
+	{
+		this(in, rule, null);
+	}
+
+	/**
+	 * @param in
+	 * @param rule decides which values are emitted
+	 * @param stats where the outcome for each value is counted;  may be null
+	 */
+	public ScriptSieveFilter(TokenStream in, ScriptSieveRule rule, SieveStatistics stats)
+	{
+		super(in);
+		this.rule = rule;
+		this.stats = stats;
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException
+	{
+		if (!decided)
+			decide();
+
+		if (iterator.hasNext())
+		{
+			restoreState(iterator.next());
+			return true;
+		}
+		if (passThrough)
+		{
+			if (input.incrementToken())
+			{
+				numTokens++;
+				return true;
+			}
+			passThrough = false;
+			if (stats != null)
+				stats.recordValue(true, numTokens);
+		}
+		return false;
+	}
+
+	@Override
+	public void end() throws IOException
+	{
+		if (finalState != null)
+			restoreState(finalState);
+		else
+			super.end();
+	}
+
+	@Override
+	public void reset() throws IOException
+	{
+		super.reset();
+		Arrays.fill(seen, 0L);
+		decided = false;
+		passThrough = false;
+		numTokens = 0;
+		cache.clear();
+		iterator = null;
+		finalState = null;
+	}
+
+	/**
+	 * buffer tokens until the value is decided
+	 */
+	private void decide() throws IOException
+	{
+		decided = true;
+		while (input.incrementToken())
+		{
+			numTokens++;
+			addTokenScripts();
+			if (rule.rejectsEarly(seen))
+			{
+				// consume the input without keeping anything
+				cache.clear();
+				while (input.incrementToken())
+					numTokens++;
+				finish(false);
+				return;
+			}
+			cache.add(captureState());
+			if (rule.acceptsEarly(seen))
+			{
+				passThrough = true;
+				iterator = cache.iterator();
+				return;
+			}
+		}
+		input.end();
+		finalState = captureState();
+		finish(rule.emits(seen));
+	}
+
+	/** the input is exhausted and the value decided */
+	private void finish(boolean emit)
+	{
+		if (!emit)
+			cache.clear();
+		iterator = cache.iterator();
+		if (stats != null)
+			stats.recordValue(emit, numTokens);
+	}
+
+	/** add the scripts of the current token to seen, from its StandardTokenizer type if possible */
+	private void addTokenScripts()
+	{
+		String type = typeAtt.type();
+		if (type == HAN_TYPE)
+			addScript(UScript.HAN);
+		else if (type == HIRAGANA_TYPE)
+			addScript(UScript.HIRAGANA);
+		else if (type == KATAKANA_TYPE)
+			addScript(UScript.KATAKANA);
+		else if (type == HANGUL_TYPE)
+			addScript(UScript.HANGUL);
+		else
+			// we have to do it the hard way
+			addScripts(termAtt.buffer(), termAtt.length());
+	}
+
+	private void addScript(int script)
+	{
+		seen[script >>> 6] |= 1L << script;
+	}
+
+	/** add the scripts of the characters in buf to seen */
+	private void addScripts(char[] buf, int len)
+	{
+		int lastScript = UScript.INVALID_CODE;
+		for (int i = 0; i < len; )
+		{
+			int cp = Character.codePointAt(buf, i, len);
+			i += Character.charCount(cp);
+			int script;
+			if (cp < 0x80)
+				script = (cp >= 'a' && cp <= 'z') || (cp >= 'A' && cp <= 'Z') ? UScript.LATIN : UScript.COMMON;
+			// the big CJK blocks, without a script property lookup
+			else if (cp >= 0x4E00 && cp <= 0x9FCB)
+				script = UScript.HAN;
+			else if (cp >= 0xAC00 && cp <= 0xD7A3)
+				script = UScript.HANGUL;
+			else if (cp >= 0x3041 && cp <= 0x3096)
+				script = UScript.HIRAGANA;
+			else if (cp >= 0x30A1 && cp <= 0x30FA)
+				script = UScript.KATAKANA;
+			else
+				script = UScript.getScript(cp);
+			if (script != lastScript && script >= 0 && script < UScript.CODE_LIMIT)
+			{
+				addScript(script);
+				lastScript = script;
+			}
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import com.ibm.icu.lang.UScript;
+
+/**
+ * When a {@link ScriptSieveFilter} emits a value's tokens:  if the value has
+ * at least one script in anyOf (or anyOf is empty), and no script in noneOf.
+ * Immutable.
+ * <p>
+ * Each {@link CJKEmitType} has an equivalent rule, from {@link #forEmitType}.
+ *
+ */
+public final class ScriptSieveRule
+{
+	private static final ScriptSet CJK = ScriptSet.of(UScript.HAN, UScript.HIRAGANA, UScript.KATAKANA, UScript.HANGUL);
+
+	private final ScriptSet anyOf;
+	private final ScriptSet noneOf;
+	// checked for every token
+	private final boolean anyOfEmpty;
+	private final boolean noneOfEmpty;
+
+	/**
+	 * @param anyOf emit only if one of these scripts is present;  EMPTY for no requirement
+	 * @param noneOf emit only if none of these scripts is present;  EMPTY for no exclusion
+	 */
+	public ScriptSieveRule(ScriptSet anyOf, ScriptSet noneOf)
+	{
+		if (anyOf == null || noneOf == null)
+			throw new IllegalArgumentException("anyOf and noneOf must not be null");
+		this.anyOf = anyOf;
+		this.noneOf = noneOf;
+		anyOfEmpty = anyOf.isEmpty();
+		noneOfEmpty = noneOf.isEmpty();
+	}
+
+	/**
+	 * @return the rule that emits the same values as CJKSieveFilter with emitType
+	 */
+	public static ScriptSieveRule forEmitType(CJKEmitType emitType)
+	{
+		switch (emitType)
+		{
+			case HANGUL:
+				return new ScriptSieveRule(ScriptSet.of(UScript.HANGUL), ScriptSet.EMPTY);
+			case JAPANESE:
+				return new ScriptSieveRule(ScriptSet.of(UScript.HIRAGANA, UScript.KATAKANA), ScriptSet.EMPTY);
+			case HAN_SOLO:
+				return new ScriptSieveRule(ScriptSet.of(UScript.HAN), ScriptSet.of(UScript.HIRAGANA, UScript.KATAKANA, UScript.HANGUL));
+			case CJ:
+				return new ScriptSieveRule(ScriptSet.of(UScript.HAN, UScript.HIRAGANA, UScript.KATAKANA), ScriptSet.of(UScript.HANGUL));
+			case ANY_CJK:
+				return new ScriptSieveRule(CJK, ScriptSet.EMPTY);
+			case NO_CJK:
+				return new ScriptSieveRule(ScriptSet.EMPTY, CJK);
+			default:
+				throw new IllegalArgumentException("unknown emitType: " + emitType);
+		}
+	}
+
+	public ScriptSet getAnyOf()
+	{
+		return anyOf;
+	}
+
+	public ScriptSet getNoneOf()
+	{
+		return noneOf;
+	}
+
+	/**
+	 * @param seen the scripts of all of a value's tokens
+	 * @return true if the value's tokens are emitted
+	 */
+	boolean emits(long[] seen)
+	{
+		return (anyOfEmpty || anyOf.intersects(seen)) && !noneOf.intersects(seen);
+	}
+
+	/**
+	 * @param seen the scripts of some of a value's tokens
+	 * @return true if the value is suppressed, whatever its other tokens are
+	 */
+	boolean rejectsEarly(long[] seen)
+	{
+		return !noneOfEmpty && noneOf.intersects(seen);
+	}
+
+	/**
+	 * @param seen the scripts of some of a value's tokens
+	 * @return true if the value is emitted, whatever its other tokens are
+	 */
+	boolean acceptsEarly(long[] seen)
+	{
+		return noneOfEmpty && !anyOfEmpty && anyOf.intersects(seen);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "anyOf=" + anyOf + " noneOf=" + noneOf;
+	}
+}
@@ -0,0 +1,202 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of the values and tokens seen and emitted by the
+ * {@link CJKSieveFilter}s sharing a name (e.g. all the filters for one
+ * fieldType).  Thread safe.
+ * <p>
+ * Shadow emit types (see {@link CJKSieveRules}) are counted per emit type:
+ * the values evaluated, how many of those the shadow decided the same way as
+ * the real rules, and the values and tokens the shadow would have emitted.
+ *
+ */
+public final class SieveStatistics
+{
+	private static final ConcurrentMap<String, SieveStatistics> registry = new ConcurrentHashMap<String, SieveStatistics>();
+
+	private final String name;
+	private final AtomicLong values = new AtomicLong();
+	private final AtomicLong valuesEmitted = new AtomicLong();
+	private final AtomicLong tokens = new AtomicLong();
+	private final AtomicLong tokensEmitted = new AtomicLong();
+	private final AtomicLong budgetExceeded = new AtomicLong();
+
+	// shadow counts, SHADOW_COUNTS per emit type
+	private static final int SHADOW_VALUES = 0;
+	private static final int SHADOW_AGREEMENTS = 1;
+	private static final int SHADOW_VALUES_EMITTED = 2;
+	private static final int SHADOW_TOKENS_EMITTED = 3;
+	private static final int SHADOW_ACTUAL_TOKENS_EMITTED = 4;
+	private static final int SHADOW_COUNTS = 5;
+	private final AtomicLongArray shadows = new AtomicLongArray(CJKEmitType.values().length * SHADOW_COUNTS);
+
+	private SieveStatistics(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * @return the statistics with the given name, creating them if necessary
+	 */
+	public static SieveStatistics forName(String name)
+	{
+		SieveStatistics stats = registry.get(name);
+		if (stats == null)
+		{
+			SieveStatistics newStats = new SieveStatistics(name);
+			stats = registry.putIfAbsent(name, newStats);
+			if (stats == null)
+				stats = newStats;
+		}
+		return stats;
+	}
+
+	/**
+	 * @return all the named statistics, sorted by name
+	 */
+	public static Map<String, SieveStatistics> getAll()
+	{
+		return new TreeMap<String, SieveStatistics>(registry);
+	}
+
+	/**
+	 * record the outcome for one value
+	 * @param emitted true if the value's tokens were emitted
+	 * @param numTokens the number of tokens in the value
+	 */
+	public void recordValue(boolean emitted, int numTokens)
+	{
+		values.incrementAndGet();
+		tokens.addAndGet(numTokens);
+		if (emitted)
+		{
+			valuesEmitted.incrementAndGet();
+			tokensEmitted.addAndGet(numTokens);
+		}
+	}
+
+	/**
+	 * record that a value exceeded the filter's budget and was decided by
+	 * the fallback;  the value itself is also recorded with recordValue
+	 */
+	public void recordBudgetExceeded()
+	{
+		budgetExceeded.incrementAndGet();
+	}
+
+	/**
+	 * record the decision of a shadow emit type for one value
+	 * @param shadow the shadow emit type
+	 * @param shadowEmitted true if the shadow would have emitted the value's tokens
+	 * @param emitted true if the value's tokens were actually emitted
+	 * @param numTokens the number of tokens in the value
+	 */
+	public void recordShadow(CJKEmitType shadow, boolean shadowEmitted, boolean emitted, int numTokens)
+	{
+		int base = shadow.ordinal() * SHADOW_COUNTS;
+		shadows.incrementAndGet(base + SHADOW_VALUES);
+		if (shadowEmitted == emitted)
+			shadows.incrementAndGet(base + SHADOW_AGREEMENTS);
+		if (shadowEmitted)
+		{
+			shadows.incrementAndGet(base + SHADOW_VALUES_EMITTED);
+			shadows.addAndGet(base + SHADOW_TOKENS_EMITTED, numTokens);
+		}
+		if (emitted)
+			shadows.addAndGet(base + SHADOW_ACTUAL_TOKENS_EMITTED, numTokens);
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public long getValues()
+	{
+		return values.get();
+	}
+
+	public long getValuesEmitted()
+	{
+		return valuesEmitted.get();
+	}
+
+	public long getTokens()
+	{
+		return tokens.get();
+	}
+
+	public long getTokensEmitted()
+	{
+		return tokensEmitted.get();
+	}
+
+	public long getBudgetExceeded()
+	{
+		return budgetExceeded.get();
+	}
+
+	/** @return the number of values the shadow emit type was evaluated for */
+	public long getShadowValues(CJKEmitType shadow)
+	{
+		return shadows.get(shadow.ordinal() * SHADOW_COUNTS + SHADOW_VALUES);
+	}
+
+	/** @return the number of values the shadow decided the same way as the real rules */
+	public long getShadowAgreements(CJKEmitType shadow)
+	{
+		return shadows.get(shadow.ordinal() * SHADOW_COUNTS + SHADOW_AGREEMENTS);
+	}
+
+	/** @return the number of values the shadow would have emitted */
+	public long getShadowValuesEmitted(CJKEmitType shadow)
+	{
+		return shadows.get(shadow.ordinal() * SHADOW_COUNTS + SHADOW_VALUES_EMITTED);
+	}
+
+	/** @return the number of tokens the shadow would have emitted */
+	public long getShadowTokensEmitted(CJKEmitType shadow)
+	{
+		return shadows.get(shadow.ordinal() * SHADOW_COUNTS + SHADOW_TOKENS_EMITTED);
+	}
+
+	/** @return the number of tokens actually emitted for the values the shadow was evaluated for */
+	public long getShadowActualTokensEmitted(CJKEmitType shadow)
+	{
+		return shadows.get(shadow.ordinal() * SHADOW_COUNTS + SHADOW_ACTUAL_TOKENS_EMITTED);
+	}
+}
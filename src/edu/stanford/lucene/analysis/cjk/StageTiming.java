@@ -0,0 +1,182 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings for one stage of an analysis chain, recorded by
+ * {@link StageTimingFilter}s sharing a name.  Token counts are kept for every
+ * value;  times are kept for sampled values only, as totals and as a histogram
+ * with power of two buckets.  Thread safe.
+ *
+ */
+public final class StageTiming
+{
+	private static final ConcurrentMap<String, StageTiming> registry = new ConcurrentHashMap<String, StageTiming>();
+
+	private final String name;
+	private final AtomicLong values = new AtomicLong();
+	private final AtomicLong tokensIn = new AtomicLong();
+	private final AtomicLong tokensOut = new AtomicLong();
+	private final AtomicLong sampledValues = new AtomicLong();
+	private final AtomicLong stageNanos = new AtomicLong();
+	private final AtomicLong upstreamNanos = new AtomicLong();
+	/** bucket i counts sampled values whose stage time was less than 2^i nanoseconds */
+	private final AtomicLongArray histogram = new AtomicLongArray(64);
+
+	private StageTiming(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * @return the timing with the given name, creating it if necessary
+	 */
+	public static StageTiming forName(String name)
+	{
+		StageTiming timing = registry.get(name);
+		if (timing == null)
+		{
+			StageTiming newTiming = new StageTiming(name);
+			timing = registry.putIfAbsent(name, newTiming);
+			if (timing == null)
+				timing = newTiming;
+		}
+		return timing;
+	}
+
+	/**
+	 * @return all the named timings, sorted by name
+	 */
+	public static Map<String, StageTiming> getAll()
+	{
+		return new TreeMap<String, StageTiming>(registry);
+	}
+
+	/**
+	 * record the token counts for a value that was not timed
+	 */
+	public void record(int numTokensIn, int numTokensOut)
+	{
+		values.incrementAndGet();
+		tokensIn.addAndGet(numTokensIn);
+		tokensOut.addAndGet(numTokensOut);
+	}
+
+	/**
+	 * record the token counts and times for a sampled value
+	 * @param nanos time spent in the stage itself
+	 * @param nanosUpstream time spent in the stages before this one
+	 */
+	public void record(int numTokensIn, int numTokensOut, long nanos, long nanosUpstream)
+	{
+		record(numTokensIn, numTokensOut);
+		if (nanos < 0)
+			nanos = 0;
+		sampledValues.incrementAndGet();
+		stageNanos.addAndGet(nanos);
+		upstreamNanos.addAndGet(nanosUpstream);
+		histogram.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public long getValues()
+	{
+		return values.get();
+	}
+
+	public long getTokensIn()
+	{
+		return tokensIn.get();
+	}
+
+	public long getTokensOut()
+	{
+		return tokensOut.get();
+	}
+
+	public long getSampledValues()
+	{
+		return sampledValues.get();
+	}
+
+	/**
+	 * @return total time spent in the stage for the sampled values
+	 */
+	public long getStageNanos()
+	{
+		return stageNanos.get();
+	}
+
+	/**
+	 * @return total time spent before the stage (tokenizer and earlier
+	 *  filters) for the sampled values
+	 */
+	public long getUpstreamNanos()
+	{
+		return upstreamNanos.get();
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return an upper bound on the stage time of the given percentile of
+	 *  sampled values, or 0 if there are no samples
+	 */
+	public long getPercentileNanos(double percentile)
+	{
+		long total = 0;
+		long[] counts = new long[histogram.length()];
+		for (int i = 0; i < counts.length; i++)
+		{
+			counts[i] = histogram.get(i);
+			total += counts[i];
+		}
+		if (total == 0)
+			return 0;
+
+		long threshold = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if (seen >= threshold && seen > 0)
+				return i == 63 ? Long.MAX_VALUE : 1L << i;
+		}
+		return Long.MAX_VALUE;
+	}
+}
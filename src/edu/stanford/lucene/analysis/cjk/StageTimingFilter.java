@@ -0,0 +1,182 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * Records the time and token counts of one stage of an analysis chain in a
+ * {@link StageTiming}.  The stage is built on top of an {@link UpstreamProbe},
+ * which measures the time spent before the stage so it can be subtracted:
+ * <pre>
+ *   StageTimingFilter.UpstreamProbe probe = new StageTimingFilter.UpstreamProbe(tokenizer);
+ *   TokenStream stage = new CJKSieveFilter(probe, CJKEmitType.JAPANESE);
+ *   TokenStream timed = new StageTimingFilter(stage, probe, StageTiming.forName("sieve"), 100);
+ * </pre>
+ * Only one value in every sampleEvery values is timed;  token counts are kept
+ * for all values.
+ *
+ */
+public final class StageTimingFilter extends TokenFilter
+{
+	private final UpstreamProbe probe;
+	private final StageTiming timing;
+	private final int sampleEvery;
+
+	private int valueCount = 0;
+	private boolean sampled = false;
+	private boolean recorded = false;
+	private long nanos = 0;
+	private int tokensOut = 0;
+
+	/**
+	 * @param stage the stage to time, built on top of probe
+	 * @param probe the input to the stage
+	 * @param timing where the results are recorded
+	 * @param sampleEvery time one value in this many;  1 times every value
+	 */
+	public StageTimingFilter(TokenStream stage, UpstreamProbe probe, StageTiming timing, int sampleEvery)
+	{
+		super(stage);
+		if (sampleEvery < 1)
+			throw new IllegalArgumentException("sampleEvery must be at least 1");
+		this.probe = probe;
+		this.timing = timing;
+		this.sampleEvery = sampleEvery;
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException
+	{
+		boolean more;
+		if (sampled)
+		{
+			long start = System.nanoTime();
+			more = input.incrementToken();
+			nanos += System.nanoTime() - start;
+		}
+		else
+			more = input.incrementToken();
+
+		if (more)
+			tokensOut++;
+		return more;
+	}
+
+	@Override
+	public void end() throws IOException
+	{
+		if (sampled)
+		{
+			long start = System.nanoTime();
+			input.end();
+			nanos += System.nanoTime() - start;
+		}
+		else
+			input.end();
+
+		if (!recorded)
+		{
+			recorded = true;
+			if (sampled)
+				timing.record(probe.tokensIn, tokensOut, nanos - probe.nanos, probe.nanos);
+			else
+				timing.record(probe.tokensIn, tokensOut);
+		}
+	}
+
+	@Override
+	public void reset() throws IOException
+	{
+		super.reset();
+		sampled = ++valueCount % sampleEvery == 0;
+		probe.sampled = sampled;
+		recorded = false;
+		nanos = 0;
+		tokensOut = 0;
+	}
+
+
+	/**
+	 * Input to a timed stage:  counts the tokens going into the stage, and
+	 * times the stages before it.
+	 */
+	public static final class UpstreamProbe extends TokenFilter
+	{
+		private boolean sampled = false;
+		private long nanos = 0;
+		private int tokensIn = 0;
+
+		public UpstreamProbe(TokenStream input)
+		{
+			super(input);
+		}
+
+		@Override
+		public boolean incrementToken() throws IOException
+		{
+			boolean more;
+			if (sampled)
+			{
+				long start = System.nanoTime();
+				more = input.incrementToken();
+				nanos += System.nanoTime() - start;
+			}
+			else
+				more = input.incrementToken();
+
+			if (more)
+				tokensIn++;
+			return more;
+		}
+
+		@Override
+		public void end() throws IOException
+		{
+			if (sampled)
+			{
+				long start = System.nanoTime();
+				input.end();
+				nanos += System.nanoTime() - start;
+			}
+			else
+				input.end();
+		}
+
+		@Override
+		public void reset() throws IOException
+		{
+			super.reset();
+			nanos = 0;
+			tokensIn = 0;
+		}
+	}
+}
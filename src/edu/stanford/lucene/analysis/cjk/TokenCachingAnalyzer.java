@@ -0,0 +1,267 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharStream;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.*;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.index.Payload;
+
+/**
+ * Wraps an Analyzer (e.g. a chain containing {@link CJKSieveFilter}) so its
+ * final token streams are kept in an {@link AnalyzedTokenCache}.  When a value
+ * has been analyzed before by the same chain, the cached tokens are replayed
+ * and the wrapped Analyzer is not run at all.
+ * <p>
+ * Only the term, offsets, position increment, type and payload of each token
+ * are cached.  Offsets are cached relative to the char filtered value and
+ * corrected through the Reader's char filters when the tokens are replayed;
+ * other attributes set by the wrapped chain are not available to consumers
+ * of this Analyzer.
+ * <p>
+ * The chainConfig string must change whenever the wrapped chain's
+ * configuration changes (e.g. the schema fieldType definition, or a version
+ * number), otherwise stale tokens will be replayed.
+ *
+ */
+public final class TokenCachingAnalyzer extends Analyzer
+{
+	private final Analyzer delegate;
+	private final AnalyzedTokenCache cache;
+	private final String chainConfig;
+
+	/**
+	 * @param delegate the Analyzer to run on a cache miss
+	 * @param cache where analyzed tokens are stored
+	 * @param chainConfig identifies the configuration of the delegate Analyzer
+	 */
+	public TokenCachingAnalyzer(Analyzer delegate, AnalyzedTokenCache cache, String chainConfig)
+	{
+		this.delegate = delegate;
+		this.cache = cache;
+		this.chainConfig = chainConfig;
+	}
+
+	@Override
+	public final TokenStream tokenStream(String fieldName, Reader reader)
+	{
+		return new CachedTokenStream(fieldName, reader);
+	}
+
+	@Override
+	public final TokenStream reusableTokenStream(String fieldName, Reader reader) throws IOException
+	{
+		return tokenStream(fieldName, reader);
+	}
+
+	@Override
+	public int getPositionIncrementGap(String fieldName)
+	{
+		return delegate.getPositionIncrementGap(fieldName);
+	}
+
+	@Override
+	public int getOffsetGap(Fieldable field)
+	{
+		return delegate.getOffsetGap(field);
+	}
+
+	@Override
+	public void close()
+	{
+		delegate.close();
+	}
+
+
+	/**
+	 * Replays cached tokens for the value, or runs the delegate Analyzer and
+	 * records its tokens in the cache.
+	 */
+	private final class CachedTokenStream extends TokenStream
+	{
+		private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+		private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+		private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+		private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+		private final PayloadAttribute payloadAtt = addAttribute(PayloadAttribute.class);
+
+		private final String fieldName;
+		private Reader reader;
+		/** the reader, if offsets need to be corrected for char filters */
+		private final CharStream charStream;
+		private boolean started = false;
+
+		private AnalyzedTokenCache.Key key;
+		/** the cached tokens on a cache hit;  the tokens being recorded on a miss */
+		private AnalyzedTokenCache.Entry entry;
+		private boolean cacheHit = false;
+		private int upto = 0;
+
+		// the delegate's stream, on a cache miss
+		private TokenStream upstream;
+		private CharTermAttribute upTermAtt;
+		private OffsetAttribute upOffsetAtt;
+		private PositionIncrementAttribute upPosIncAtt;
+		private TypeAttribute upTypeAtt;
+		private PayloadAttribute upPayloadAtt;
+		private boolean upstreamExhausted = false;
+
+		CachedTokenStream(String fieldName, Reader reader)
+		{
+			this.fieldName = fieldName;
+			this.reader = reader;
+			this.charStream = reader instanceof CharStream ? (CharStream) reader : null;
+		}
+
+		@Override
+		public boolean incrementToken() throws IOException
+		{
+			if (!started)
+				start();
+
+			clearAttributes();
+			if (entry == null)
+				return false;
+			if (cacheHit)
+			{
+				if (upto >= entry.size)
+					return false;
+				termAtt.setEmpty().append(entry.terms[upto]);
+				offsetAtt.setOffset(correctOffset(entry.startOffsets[upto]), correctOffset(entry.endOffsets[upto]));
+				posIncAtt.setPositionIncrement(entry.posIncs[upto]);
+				typeAtt.setType(entry.types[upto]);
+				if (entry.payloads[upto] != null)
+					payloadAtt.setPayload(new Payload(entry.payloads[upto]));
+				upto++;
+				return true;
+			}
+
+			if (upstreamExhausted || !upstream.incrementToken())
+			{
+				upstreamExhausted = true;
+				return false;
+			}
+			termAtt.copyBuffer(upTermAtt.buffer(), 0, upTermAtt.length());
+			offsetAtt.setOffset(correctOffset(upOffsetAtt.startOffset()), correctOffset(upOffsetAtt.endOffset()));
+			posIncAtt.setPositionIncrement(upPosIncAtt.getPositionIncrement());
+			typeAtt.setType(upTypeAtt.type());
+			Payload payload = upPayloadAtt.getPayload();
+			payloadAtt.setPayload(payload);
+			entry.add(termAtt.toString(), upOffsetAtt.startOffset(), upOffsetAtt.endOffset(),
+					posIncAtt.getPositionIncrement(), typeAtt.type(), payload == null ? null : payload.toByteArray());
+			return true;
+		}
+
+		@Override
+		public void end() throws IOException
+		{
+			if (!started)
+				start();
+			if (entry == null)
+			{
+				// reading the value failed
+				offsetAtt.setOffset(0, 0);
+				return;
+			}
+
+			if (!cacheHit)
+			{
+				upstream.end();
+				entry.finalOffset = upOffsetAtt.endOffset();
+				// only a completely consumed stream is worth keeping
+				if (upstreamExhausted)
+					cache.put(key, entry);
+			}
+			int finalOffset = correctOffset(entry.finalOffset);
+			offsetAtt.setOffset(finalOffset, finalOffset);
+		}
+
+		@Override
+		public void reset() throws IOException
+		{
+			// a fully consumed value can be replayed from the recorded tokens
+			if (entry != null && (cacheHit || upstreamExhausted))
+			{
+				cacheHit = true;
+				upto = 0;
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if (upstream != null)
+				upstream.close();
+			if (reader != null)
+				reader.close();
+		}
+
+		private int correctOffset(int offset)
+		{
+			return charStream == null ? offset : charStream.correctOffset(offset);
+		}
+
+		/** read the value and look it up in the cache */
+		private void start() throws IOException
+		{
+			// don't try again if reading the value fails
+			started = true;
+			StringBuilder sb = new StringBuilder();
+			char[] buf = new char[1024];
+			int len;
+			while ((len = reader.read(buf)) != -1)
+				sb.append(buf, 0, len);
+			reader.close();
+			reader = null;
+			String content = sb.toString();
+
+			key = AnalyzedTokenCache.key(chainConfig, fieldName, content);
+			entry = cache.get(key);
+			if (entry != null)
+			{
+				cacheHit = true;
+				return;
+			}
+
+			entry = new AnalyzedTokenCache.Entry(16);
+			upstream = delegate.reusableTokenStream(fieldName, new StringReader(content));
+			upTermAtt = upstream.addAttribute(CharTermAttribute.class);
+			upOffsetAtt = upstream.addAttribute(OffsetAttribute.class);
+			upPosIncAtt = upstream.addAttribute(PositionIncrementAttribute.class);
+			upTypeAtt = upstream.addAttribute(TypeAttribute.class);
+			upPayloadAtt = upstream.addAttribute(PayloadAttribute.class);
+			upstream.reset();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.cjk.CJKBigramFilter;
+
+import edu.stanford.lucene.analysis.cjk.CJKSieveBigramFilter;
+import edu.stanford.lucene.analysis.cjk.CJKSieveRules;
+
+/**
+ * Factory for {@link CJKSieveBigramFilter}, which replaces a
+ * CJKSieveFilterFactory directly followed by a solr.CJKBigramFilterFactory.
+ * It takes the attributes of both:  emitIf (or rules and
+ * rulesCheckInterval) and stats as for {@link CJKSieveFilterFactory}, and
+ * han, hiragana, katakana and hangul (default true) as for
+ * CJKBigramFilterFactory.  Script hints and budgets are not supported;
+ * a rules file that sets maxTokens or maxMillis is rejected.
+ * <pre class="prettyprint" >
+ * &lt;fieldType name="text_ko" class="solr.TextField"&gt;
+ *   &lt;analyzer&gt;
+ *     &lt;tokenizer class="solr.StandardTokenizerFactory"/&gt;
+ *     &lt;filter class="edu.stanford.solr.analysis.CJKSieveBigramFilterFactory" emitIf="hangul"
+ *       han="true" hiragana="false" katakana="false" hangul="true"/&gt;
+ *     &lt;filter class="solr.ICUFoldingFilterFactory"/&gt;
+ *   &lt;/analyzer&gt;
+ * &lt;/fieldType&gt;</pre>
+ *
+ */
+public class CJKSieveBigramFilterFactory extends CJKSieveFilterFactory
+{
+	private int flags;
+
+	@Override
+	public void init(Map<String,String> args)
+	{
+		super.init(args);
+
+		if (args.containsKey("hintChannel") || args.containsKey("maxTokens") || args.containsKey("maxMillis"))
+			log.warn("CJKSieveBigramFilterFactory does not support script hints or budgets; ignoring hintChannel, maxTokens and maxMillis");
+
+		flags = 0;
+		if (getBoolean("han", true))
+			flags |= CJKBigramFilter.HAN;
+		if (getBoolean("hiragana", true))
+			flags |= CJKBigramFilter.HIRAGANA;
+		if (getBoolean("katakana", true))
+			flags |= CJKBigramFilter.KATAKANA;
+		if (getBoolean("hangul", true))
+			flags |= CJKBigramFilter.HANGUL;
+	}
+
+	/**
+	 * reject a budget in the rules file, rather than silently ignore it
+	 */
+	@Override
+	CJKSieveRules checkFileRules(CJKSieveRules fileRules)
+	{
+		if (fileRules.getMaxTokens() > 0 || fileRules.getMaxMillis() > 0)
+			throw new RuntimeException("Configuration Error: CJKSieveBigramFilterFactory does not support budgets; remove maxTokens and maxMillis from the rules");
+		return fileRules;
+	}
+
+	@Override
+	public TokenStream create(TokenStream input)
+	{
+		return new CJKSieveBigramFilter(input, getRulesSource(), getStats(), flags);
+	}
+}
@@ -27,13 +27,22 @@ SOFTWARE.
 
 package edu.stanford.solr.analysis;
 
+import java.io.*;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.solr.analysis.BaseTokenFilterFactory;
+import org.apache.solr.common.ResourceLoader;
+import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.util.plugin.ResourceLoaderAware;
 
 import edu.stanford.lucene.analysis.cjk.CJKSieveFilter;
 import edu.stanford.lucene.analysis.cjk.CJKEmitType;
+import edu.stanford.lucene.analysis.cjk.CJKSieveRules;
+import edu.stanford.lucene.analysis.cjk.ScriptHintChannel;
+import edu.stanford.lucene.analysis.cjk.SieveStatistics;
 
 /**
  * Factory for {@link CJKSieveFilter}.
@@ -67,39 +76,309 @@ import edu.stanford.lucene.analysis.cjk.CJKEmitType;
  *   &lt;/analyzer&gt;
  * &lt;/fieldType&gt;</pre>
  *
+ * Instead of the emitIf attribute, the rules can be read from a file in the
+ * conf directory, which is checked for changes every rulesCheckInterval
+ * milliseconds (default 10000).  Changed rules are used by every value analyzed
+ * after the change;  values being analyzed when the file changes finish with
+ * the old rules.  The file has the same keys as the filter attributes for the
+ * rules:  emitIf, shadowEmitIf, maxTokens, maxMillis and budgetFallback.
+ * <pre class="prettyprint" >
+ * &lt;filter class="edu.stanford.solr.analysis.CJKSieveFilterFactory" rules="sieve_ja.properties" rulesCheckInterval="5000"/&gt;
+ *
+ * # sieve_ja.properties
+ * emitIf=japanese
+ * maxTokens=20000</pre>
+ *
+ * With hintChannel="name", script hints from a
+ * {@link ScriptHintCharFilterFactory} with the same hintChannel are used
+ * instead of scanning the tokens.  Give each chain its own channel name.
+ * <p>
+ * With stats="name", the values and tokens seen and emitted are counted in
+ * the {@link SieveStatistics} of that name, which can be viewed with
+ * {@link SieveStatisticsRequestHandler}.
+ * <p>
+ * shadowEmitIf lists alternative emitIf values, separated by commas, to be
+ * evaluated in shadow mode:  each one's decision for every value is made from
+ * the same scripts and counted in the statistics (so stats is needed), but
+ * only emitIf affects the output.  It can also be set in a rules file, to try
+ * out a rule change on live traffic before making it:
+ * <pre class="prettyprint" >
+ * &lt;filter class="edu.stanford.solr.analysis.CJKSieveFilterFactory" emitIf="japanese" shadowEmitIf="cj,any_cjk" stats="text_ja"/&gt;</pre>
+ * <p>
+ * maxTokens and maxMillis limit the number of tokens, and the time spent
+ * tokenizing and buffering, for each value (default: no limit).  A value
+ * exceeding either is decided by budgetFallback:  emit, suppress, or
+ * scripts_so_far (the default), which decides on the tokens buffered before
+ * the limit was reached.  Values exceeding the budget are counted as
+ * budgetExceeded in the statistics.
+ * <pre class="prettyprint" >
+ * &lt;filter class="edu.stanford.solr.analysis.CJKSieveFilterFactory" emitIf="japanese"
+ *   maxTokens="20000" maxMillis="200" budgetFallback="suppress" stats="text_ja"/&gt;</pre>
+ *
  * @author Naomi Dushay
  *
  */
-public class CJKSieveFilterFactory extends BaseTokenFilterFactory
+public class CJKSieveFilterFactory extends BaseTokenFilterFactory implements ResourceLoaderAware
 {
-	CJKEmitType emitType;
+	private static final long DEFAULT_RULES_CHECK_INTERVAL = 10000;
+
+	/** the current rules;  replaced as a whole when the rules file changes */
+	private volatile CJKSieveRules rules;
+
+	/** name of the rules resource, or null if the rules are in the filter attributes */
+	private String rulesResource;
+	/** the rules file, if it can be watched for changes */
+	private File rulesFile;
+	private long rulesCheckInterval;
+	private long rulesLastModified;
+	private volatile long nextRulesCheck;
+
+	/** where the outcome for each value is counted, or null */
+	private SieveStatistics stats;
+	/** where a ScriptHintCharFilter offers its hints, or null */
+	private ScriptHintChannel hintChannel;
+
+	private final CJKSieveRules.Source rulesSource = new CJKSieveRules.Source()
+	{
+		public CJKSieveRules getRules()
+		{
+			if (rulesFile != null && System.currentTimeMillis() >= nextRulesCheck)
+				checkRulesFile();
+			return rules;
+		}
+	};
 
 	@Override
 	public void init(Map<String,String> args)
 	{
 	    super.init(args);
 
-	    String emitIfStr = args.get("emitIf");
-	    if (emitIfStr == null)
-	      throw new RuntimeException("Configuration Error: missing parameter 'emitIf' for CJKSieveFilterFactory (must be one of:  japanese, hangul, han_solo, cj, any_cjk, no_cjk");
-
-	    if (emitIfStr.equals("japanese"))
-	      emitType = CJKEmitType.JAPANESE;
-	    else if (emitIfStr.equals("hangul"))
-	      emitType = CJKEmitType.HANGUL;
-	    else if (emitIfStr.equals("han_solo"))
-	      emitType = CJKEmitType.HAN_SOLO;
-	    else if (emitIfStr.equals("cj"))
-		      emitType = CJKEmitType.CJ;
-	    else if (emitIfStr.equals("any_cjk"))
-		      emitType = CJKEmitType.ANY_CJK;
-	    else if (emitIfStr.equals("no_cjk"))
-	      emitType = CJKEmitType.NO_CJK;
+	    String statsName = args.get("stats");
+	    if (statsName != null)
+	    	stats = SieveStatistics.forName(statsName);
+	    String hintChannelName = args.get("hintChannel");
+	    if (hintChannelName != null)
+	    	hintChannel = ScriptHintChannel.forName(hintChannelName);
+
+	    rulesResource = args.get("rules");
+	    if (rulesResource == null)
+	    {
+	    	rules = parseRules(args);
+	    	warnIfShadowsUncounted();
+	    }
 	    else
-	      throw new RuntimeException("Configuration Error: parameter 'emitIf' for CJKSieveFilterFactory must be one of:  japanese, hangul, han_solo, cj, any_cjk, no_cjk");
-	  }
+	    {
+	    	String interval = args.get("rulesCheckInterval");
+	    	rulesCheckInterval = interval == null ? DEFAULT_RULES_CHECK_INTERVAL : Long.parseLong(interval);
+	    }
+	}
+
+	public void inform(ResourceLoader loader)
+	{
+		if (rulesResource == null)
+			return;
+
+		try
+		{
+			rules = checkFileRules(parseRules(readRules(loader.openResource(rulesResource))));
+			warnIfShadowsUncounted();
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Configuration Error: unable to read rules '" + rulesResource + "' for CJKSieveFilterFactory", e);
+		}
+
+		if (loader instanceof SolrResourceLoader)
+		{
+			File f = new File(rulesResource);
+			if (!f.isAbsolute())
+				f = new File(((SolrResourceLoader) loader).getConfigDir(), rulesResource);
+			if (f.isFile())
+			{
+				rulesLastModified = f.lastModified();
+				nextRulesCheck = System.currentTimeMillis() + rulesCheckInterval;
+				rulesFile = f;
+			}
+		}
+		if (rulesFile == null)
+			log.warn("CJKSieveFilterFactory rules '" + rulesResource + "' are not a file in the conf directory; they will not be reloaded");
+	}
+
+	public TokenStream create(TokenStream input)
+	{
+		CJKSieveFilter filter = new CJKSieveFilter(input, rulesSource, stats);
+		filter.setCharFilterHints(hintChannel);
+		return filter;
+	}
+
+	/**
+	 * @return supplies the rules current at the start of each value
+	 */
+	CJKSieveRules.Source getRulesSource()
+	{
+		return rulesSource;
+	}
+
+	/**
+	 * @return where the outcome for each value is counted, or null
+	 */
+	SieveStatistics getStats()
+	{
+		return stats;
+	}
+
+	/**
+	 * @return the rules currently in effect
+	 */
+	public CJKSieveRules getRules()
+	{
+		return rulesSource.getRules();
+	}
 
-	  public TokenStream create(TokenStream input) {
-	    return new CJKSieveFilter(input, emitType);
-	  }
+	/**
+	 * reload the rules if the rules file has changed.  If the new rules are
+	 * invalid, keep using the old ones.
+	 */
+	private synchronized void checkRulesFile()
+	{
+		long now = System.currentTimeMillis();
+		if (now < nextRulesCheck)
+			return;
+		nextRulesCheck = now + rulesCheckInterval;
+
+		long lastModified = rulesFile.lastModified();
+		if (lastModified == rulesLastModified)
+			return;
+		try
+		{
+			rules = checkFileRules(parseRules(readRules(new FileInputStream(rulesFile))));
+			rulesLastModified = lastModified;
+			log.info("CJKSieveFilterFactory reloaded rules from " + rulesFile);
+		}
+		catch (Exception e)
+		{
+			log.error("CJKSieveFilterFactory unable to reload rules from " + rulesFile + "; keeping previous rules", e);
+		}
+	}
+
+	/**
+	 * check rules read from the rules file before they are used;  subclasses
+	 * whose filter can't apply all the rules should throw a RuntimeException
+	 * @return the rules
+	 */
+	CJKSieveRules checkFileRules(CJKSieveRules fileRules)
+	{
+		return fileRules;
+	}
+
+	private static Map<String,String> readRules(InputStream in) throws IOException
+	{
+		Properties props = new Properties();
+		try
+		{
+			props.load(in);
+		}
+		finally
+		{
+			in.close();
+		}
+		Map<String,String> result = new HashMap<String,String>();
+		for (String name : props.stringPropertyNames())
+			result.put(name, props.getProperty(name).trim());
+		return result;
+	}
+
+	/**
+	 * @param args filter attributes or the contents of a rules file
+	 */
+	static CJKSieveRules parseRules(Map<String,String> args)
+	{
+	    CJKEmitType emitType = parseEmitType(args.get("emitIf"));
+	    String shadowStr = args.get("shadowEmitIf");
+	    CJKSieveRules rules;
+	    if (shadowStr == null || shadowStr.trim().length() == 0)
+	      rules = new CJKSieveRules(emitType);
+	    else
+	    {
+	      String[] names = shadowStr.trim().split("\\s*,\\s*");
+	      CJKEmitType[] shadows = new CJKEmitType[names.length];
+	      for (int i = 0; i < names.length; i++)
+	        shadows[i] = parseEmitType(names[i], "shadowEmitIf", "CJKSieveFilterFactory");
+	      rules = new CJKSieveRules(emitType, shadows);
+	    }
+
+	    int maxTokens = parseLimit(args.get("maxTokens"), "maxTokens");
+	    int maxMillis = parseLimit(args.get("maxMillis"), "maxMillis");
+	    CJKSieveFilter.BudgetFallback budgetFallback = parseBudgetFallback(args.get("budgetFallback"));
+	    if (maxTokens > 0 || maxMillis > 0)
+	      rules = rules.withBudget(maxTokens, maxMillis, budgetFallback);
+	    return rules;
+	}
+
+	private static int parseLimit(String value, String paramName)
+	{
+	    if (value == null || value.trim().length() == 0)
+	      return 0;
+	    int limit;
+	    try
+	    {
+	      limit = Integer.parseInt(value.trim());
+	    }
+	    catch (NumberFormatException e)
+	    {
+	      limit = -1;
+	    }
+	    if (limit < 0)
+	      throw new RuntimeException("Configuration Error: parameter '" + paramName + "' for CJKSieveFilterFactory must be a number, not negative");
+	    return limit;
+	}
+
+	private void warnIfShadowsUncounted()
+	{
+		if (stats == null && rules.hasShadows())
+			log.warn("CJKSieveFilterFactory shadowEmitIf has no effect without a stats attribute");
+	}
+
+	static CJKEmitType parseEmitType(String emitIfStr)
+	{
+	    return parseEmitType(emitIfStr, "emitIf", "CJKSieveFilterFactory");
+	}
+
+	static CJKSieveFilter.BudgetFallback parseBudgetFallback(String value)
+	{
+	    if (value == null || value.equals("scripts_so_far"))
+	      return CJKSieveFilter.BudgetFallback.SCRIPTS_SO_FAR;
+	    else if (value.equals("emit"))
+	      return CJKSieveFilter.BudgetFallback.EMIT;
+	    else if (value.equals("suppress"))
+	      return CJKSieveFilter.BudgetFallback.SUPPRESS;
+	    else
+	      throw new RuntimeException("Configuration Error: parameter 'budgetFallback' for CJKSieveFilterFactory must be one of:  emit, suppress, scripts_so_far");
+	}
+
+	/**
+	 * @param value one of the CJKEmitType names used in the schema
+	 * @param paramName the name of the parameter, for error messages
+	 * @param factoryName the name of the factory, for error messages
+	 */
+	static CJKEmitType parseEmitType(String value, String paramName, String factoryName)
+	{
+	    if (value == null)
+	      throw new RuntimeException("Configuration Error: missing parameter '" + paramName + "' for " + factoryName + " (must be one of:  japanese, hangul, han_solo, cj, any_cjk, no_cjk");
+
+	    if (value.equals("japanese"))
+	      return CJKEmitType.JAPANESE;
+	    else if (value.equals("hangul"))
+	      return CJKEmitType.HANGUL;
+	    else if (value.equals("han_solo"))
+	      return CJKEmitType.HAN_SOLO;
+	    else if (value.equals("cj"))
+	      return CJKEmitType.CJ;
+	    else if (value.equals("any_cjk"))
+	      return CJKEmitType.ANY_CJK;
+	    else if (value.equals("no_cjk"))
+	      return CJKEmitType.NO_CJK;
+	    else
+	      throw new RuntimeException("Configuration Error: parameter '" + paramName + "' for " + factoryName + " must be one of:  japanese, hangul, han_solo, cj, any_cjk, no_cjk");
+	}
 }
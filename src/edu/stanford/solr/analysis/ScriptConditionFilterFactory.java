@@ -0,0 +1,132 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.solr.analysis.BaseTokenFilterFactory;
+import org.apache.solr.analysis.TokenFilterFactory;
+import org.apache.solr.common.ResourceLoader;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.util.plugin.ResourceLoaderAware;
+
+import edu.stanford.lucene.analysis.cjk.CJKEmitType;
+import edu.stanford.lucene.analysis.cjk.ScriptConditionFilter;
+
+/**
+ * Factory for {@link ScriptConditionFilter}:  only tokens whose scripts match
+ * applyIf go through the listed filters;  other tokens bypass them.
+ * <ul>
+ *  <li>applyIf: japanese, hangul, han_solo, cj, any_cjk or no_cjk, applied to each token (required)</li>
+ *  <li>filters: comma separated filter factory classes, in chain order (required)</li>
+ * </ul>
+ * Attributes for an inner factory are prefixed with its short class name and
+ * a period, e.g. ICUTransformFilterFactory.id="Traditional-Simplified".
+ * luceneMatchVersion is passed to every inner factory.
+ * <pre class="prettyprint" >
+ * &lt;fieldType name="text_cjk" class="solr.TextField"&gt;
+ *   &lt;analyzer&gt;
+ *     &lt;tokenizer class="solr.ICUTokenizerFactory"/&gt;
+ *     &lt;filter class="edu.stanford.solr.analysis.ScriptConditionFilterFactory" applyIf="any_cjk"
+ *       filters="solr.CJKWidthFilterFactory,solr.CJKBigramFilterFactory"
+ *       CJKBigramFilterFactory.hangul="false"/&gt;
+ *     &lt;filter class="solr.ICUFoldingFilterFactory"/&gt;
+ *   &lt;/analyzer&gt;
+ * &lt;/fieldType&gt;</pre>
+ *
+ */
+public class ScriptConditionFilterFactory extends BaseTokenFilterFactory implements ResourceLoaderAware
+{
+	private CJKEmitType condition;
+	private String[] filterClasses;
+	private List<Map<String,String>> filterArgs;
+	private TokenFilterFactory[] filters;
+
+	@Override
+	public void init(Map<String,String> args)
+	{
+		super.init(args);
+
+		condition = CJKSieveFilterFactory.parseEmitType(args.get("applyIf"), "applyIf", "ScriptConditionFilterFactory");
+		String filtersStr = args.get("filters");
+		if (filtersStr == null || filtersStr.trim().length() == 0)
+			throw new RuntimeException("Configuration Error: missing parameter 'filters' for ScriptConditionFilterFactory");
+
+		filterClasses = filtersStr.trim().split("\\s*,\\s*");
+		filterArgs = new ArrayList<Map<String,String>>(filterClasses.length);
+		for (String cname : filterClasses)
+		{
+			String prefix = cname.substring(cname.lastIndexOf('.') + 1) + ".";
+			Map<String,String> innerArgs = new HashMap<String,String>();
+			if (args.containsKey(IndexSchema.LUCENE_MATCH_VERSION_PARAM))
+				innerArgs.put(IndexSchema.LUCENE_MATCH_VERSION_PARAM, args.get(IndexSchema.LUCENE_MATCH_VERSION_PARAM));
+			for (Map.Entry<String,String> arg : args.entrySet())
+				if (arg.getKey().startsWith(prefix))
+					innerArgs.put(arg.getKey().substring(prefix.length()), arg.getValue());
+			filterArgs.add(innerArgs);
+		}
+	}
+
+	public void inform(ResourceLoader loader)
+	{
+		filters = new TokenFilterFactory[filterClasses.length];
+		for (int i = 0; i < filterClasses.length; i++)
+		{
+			filters[i] = (TokenFilterFactory) loader.newInstance(filterClasses[i]);
+			filters[i].init(filterArgs.get(i));
+			if (filters[i] instanceof ResourceLoaderAware)
+				((ResourceLoaderAware) filters[i]).inform(loader);
+		}
+	}
+
+	public TokenStream create(TokenStream input)
+	{
+		return new ScriptConditionFilter(input, condition, new ScriptConditionFilter.InnerChain()
+		{
+			public TokenStream create(TokenStream matching)
+			{
+				TokenStream ts = matching;
+				for (TokenFilterFactory filter : filters)
+					ts = filter.create(ts);
+				return ts;
+			}
+		});
+	}
+
+	/**
+	 * @return the factories of the inner chain, in order
+	 */
+	public TokenFilterFactory[] getFilters()
+	{
+		return filters;
+	}
+}
@@ -0,0 +1,79 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lucene.analysis.CharStream;
+import org.apache.solr.analysis.BaseCharFilterFactory;
+
+import edu.stanford.lucene.analysis.cjk.ScriptHintChannel;
+import edu.stanford.lucene.analysis.cjk.ScriptHintCharFilter;
+
+/**
+ * Factory for {@link ScriptHintCharFilter}.  Use with a CJKSieveFilterFactory
+ * in the same chain with the same hintChannel, which should be a name used by
+ * no other chain:
+ * <pre class="prettyprint" >
+ * &lt;fieldType name="text_ko" class="solr.TextField"&gt;
+ *   &lt;analyzer&gt;
+ *     &lt;charFilter class="edu.stanford.solr.analysis.ScriptHintCharFilterFactory" hintChannel="text_ko"/&gt;
+ *     &lt;tokenizer class="solr.StandardTokenizerFactory"/&gt;
+ *     &lt;filter class="edu.stanford.solr.analysis.CJKSieveFilterFactory" emitIf="hangul" hintChannel="text_ko"/&gt;
+ *     ...
+ *   &lt;/analyzer&gt;
+ * &lt;/fieldType&gt;</pre>
+ *
+ */
+public class ScriptHintCharFilterFactory extends BaseCharFilterFactory
+{
+	private ScriptHintChannel hintChannel;
+
+	@Override
+	public void init(Map<String,String> args)
+	{
+		super.init(args);
+		String hintChannelName = args.get("hintChannel");
+		if (hintChannelName == null || hintChannelName.trim().length() == 0)
+			throw new RuntimeException("Configuration Error: missing parameter 'hintChannel' for ScriptHintCharFilterFactory");
+		hintChannel = ScriptHintChannel.forName(hintChannelName);
+	}
+
+	public CharStream create(CharStream input)
+	{
+		try
+		{
+			return new ScriptHintCharFilter(input, hintChannel);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+}
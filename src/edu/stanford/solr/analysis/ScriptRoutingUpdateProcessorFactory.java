@@ -0,0 +1,216 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
+
+import edu.stanford.lucene.analysis.cjk.CJKEmitType;
+import edu.stanford.lucene.analysis.cjk.ScriptRouter;
+
+/**
+ * Update processor factory that gives each document a routing key from the
+ * CJK scripts in some of its fields, using a {@link ScriptRouter}.  The key
+ * is put in routeField, so documents needing CJK analysis can be sent to
+ * cores or shards sized for it, and the Latin only ones kept lean.
+ * <pre class="prettyprint" >
+ * &lt;updateRequestProcessorChain name="route"&gt;
+ *   &lt;processor class="edu.stanford.solr.analysis.ScriptRoutingUpdateProcessorFactory"&gt;
+ *     &lt;str name="fields"&gt;title,author,subject&lt;/str&gt;
+ *     &lt;str name="routes"&gt;hangul:ko,japanese:ja,any_cjk:cjk&lt;/str&gt;
+ *     &lt;str name="default"&gt;latin&lt;/str&gt;
+ *     &lt;int name="minChars"&gt;2&lt;/int&gt;
+ *     &lt;str name="routeField"&gt;route&lt;/str&gt;
+ *   &lt;/processor&gt;
+ *   &lt;processor class="solr.RunUpdateProcessorFactory"/&gt;
+ * &lt;/updateRequestProcessorChain&gt;</pre>
+ *
+ * Routes are tried in order;  each is an emitIf value and a key.  Documents
+ * matching no route get the default key, or are left unchanged if there is
+ * none.  This processor must come before RunUpdateProcessorFactory.
+ * <p>
+ * The uniqueKey is deliberately left alone:  Solr 3.6 has no compositeId
+ * routing, so a key prefixed to the id would make a document whose scripts
+ * change between updates be added under a second id instead of replacing the
+ * first, and deletes by the original id would miss it.  Clients choosing a
+ * core per route can call ScriptRouter themselves, or read routeField.
+ * <p>
+ * The number of documents given each key is available from
+ * {@link #getRouteCounts()}.
+ *
+ */
+public class ScriptRoutingUpdateProcessorFactory extends UpdateRequestProcessorFactory
+{
+	private String[] fields;
+	private ScriptRouter router;
+	private String routeField;
+
+	/** number of documents given each key, in route order */
+	private final Map<String,AtomicLong> routeCounts = new LinkedHashMap<String,AtomicLong>();
+
+	@Override
+	public void init(@SuppressWarnings("rawtypes") NamedList args)
+	{
+		super.init(args);
+
+		String fieldsStr = getString(args, "fields");
+		if (fieldsStr == null || fieldsStr.trim().length() == 0)
+			throw new RuntimeException("Configuration Error: missing parameter 'fields' for ScriptRoutingUpdateProcessorFactory");
+		fields = fieldsStr.trim().split("\\s*,\\s*");
+
+		String routesStr = getString(args, "routes");
+		if (routesStr == null || routesStr.trim().length() == 0)
+			throw new RuntimeException("Configuration Error: missing parameter 'routes' for ScriptRoutingUpdateProcessorFactory");
+		String[] routes = routesStr.trim().split("\\s*,\\s*");
+		CJKEmitType[] emitTypes = new CJKEmitType[routes.length];
+		String[] keys = new String[routes.length];
+		for (int i = 0; i < routes.length; i++)
+		{
+			int colon = routes[i].indexOf(':');
+			if (colon <= 0 || colon == routes[i].length() - 1)
+				throw new RuntimeException("Configuration Error: route '" + routes[i] + "' for ScriptRoutingUpdateProcessorFactory must be emitIf:key");
+			emitTypes[i] = CJKSieveFilterFactory.parseEmitType(routes[i].substring(0, colon).trim(), "routes", "ScriptRoutingUpdateProcessorFactory");
+			keys[i] = routes[i].substring(colon + 1).trim();
+		}
+
+		String minCharsStr = getString(args, "minChars");
+		int minChars = 1;
+		if (minCharsStr != null)
+		{
+			try
+			{
+				minChars = Integer.parseInt(minCharsStr.trim());
+			}
+			catch (NumberFormatException e)
+			{
+				minChars = 0;
+			}
+		}
+		if (minChars < 1)
+			throw new RuntimeException("Configuration Error: parameter 'minChars' for ScriptRoutingUpdateProcessorFactory must be a number, at least 1");
+		router = new ScriptRouter(emitTypes, keys, getString(args, "default"), minChars);
+
+		routeField = getString(args, "routeField");
+		if (routeField == null || routeField.trim().length() == 0)
+			throw new RuntimeException("Configuration Error: missing parameter 'routeField' for ScriptRoutingUpdateProcessorFactory");
+
+		for (String key : router.getKeys())
+		{
+			if (!routeCounts.containsKey(key))
+				routeCounts.put(key, new AtomicLong());
+		}
+	}
+
+	@Override
+	public UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next)
+	{
+		return new ScriptRoutingUpdateProcessor(next);
+	}
+
+	/**
+	 * @return the router deciding each document's key
+	 */
+	public ScriptRouter getRouter()
+	{
+		return router;
+	}
+
+	/**
+	 * @return the number of documents given each key so far, in route order
+	 */
+	public Map<String,Long> getRouteCounts()
+	{
+		Map<String,Long> result = new LinkedHashMap<String,Long>();
+		for (Map.Entry<String,AtomicLong> entry : routeCounts.entrySet())
+			result.put(entry.getKey(), entry.getValue().get());
+		return result;
+	}
+
+	/**
+	 * @return the key for the document, from the values of the routing fields
+	 */
+	String route(SolrInputDocument doc)
+	{
+		int n = 0;
+		for (String field : fields)
+		{
+			Collection<Object> values = doc.getFieldValues(field);
+			if (values != null)
+				n += values.size();
+		}
+		CharSequence[] texts = new CharSequence[n];
+		int i = 0;
+		for (String field : fields)
+		{
+			Collection<Object> values = doc.getFieldValues(field);
+			if (values == null)
+				continue;
+			for (Object value : values)
+				texts[i++] = value instanceof CharSequence ? (CharSequence) value : null;
+		}
+		return router.route(texts);
+	}
+
+	private static String getString(NamedList<?> args, String name)
+	{
+		Object value = args.get(name);
+		return value == null ? null : value.toString();
+	}
+
+	class ScriptRoutingUpdateProcessor extends UpdateRequestProcessor
+	{
+		ScriptRoutingUpdateProcessor(UpdateRequestProcessor next)
+		{
+			super(next);
+		}
+
+		@Override
+		public void processAdd(AddUpdateCommand cmd) throws IOException
+		{
+			SolrInputDocument doc = cmd.getSolrInputDocument();
+			String key = route(doc);
+			if (key != null)
+			{
+				doc.setField(routeField, key);
+				routeCounts.get(key).incrementAndGet();
+			}
+			super.processAdd(cmd);
+		}
+	}
+}
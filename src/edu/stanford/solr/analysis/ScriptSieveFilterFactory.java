@@ -0,0 +1,118 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.solr.analysis.BaseTokenFilterFactory;
+
+import edu.stanford.lucene.analysis.cjk.ScriptSet;
+import edu.stanford.lucene.analysis.cjk.ScriptSieveFilter;
+import edu.stanford.lucene.analysis.cjk.ScriptSieveRule;
+import edu.stanford.lucene.analysis.cjk.SieveStatistics;
+
+/**
+ * Factory for {@link ScriptSieveFilter}.
+ *
+ * The rule is given either by anyOf and noneOf, each a comma separated list
+ * of Unicode script names or ISO 15924 codes as known to ICU, or by emitIf,
+ * with the same values as for {@link CJKSieveFilterFactory}.
+ *
+ * Example:  IFF you detect Thai script, and no Lao, you want to use a Thai
+ *  dictionary based chain:
+ * <pre class="prettyprint" >
+ * &lt;fieldType name="text_th" class="solr.TextField"&gt;
+ *   &lt;analyzer&gt;
+ *     &lt;tokenizer class="solr.StandardTokenizerFactory"/&gt;
+ *     &lt;filter class="edu.stanford.solr.analysis.ScriptSieveFilterFactory" anyOf="Thai" noneOf="Lao"/&gt;
+ *     &lt;filter class="solr.ThaiWordFilterFactory"/&gt;
+ *   &lt;/analyzer&gt;
+ * &lt;/fieldType&gt;</pre>
+ *
+ * With stats="name", the values and tokens seen and emitted are counted in
+ * the {@link SieveStatistics} of that name.
+ *
+ */
+public class ScriptSieveFilterFactory extends BaseTokenFilterFactory
+{
+	private ScriptSieveRule rule;
+	/** where the outcome for each value is counted, or null */
+	private SieveStatistics stats;
+
+	@Override
+	public void init(Map<String,String> args)
+	{
+		super.init(args);
+
+		String emitIf = args.get("emitIf");
+		String anyOf = args.get("anyOf");
+		String noneOf = args.get("noneOf");
+		if (emitIf != null)
+		{
+			if (anyOf != null || noneOf != null)
+				throw new RuntimeException("Configuration Error: ScriptSieveFilterFactory takes either 'emitIf' or 'anyOf' and 'noneOf', not both");
+			rule = ScriptSieveRule.forEmitType(CJKSieveFilterFactory.parseEmitType(emitIf, "emitIf", "ScriptSieveFilterFactory"));
+		}
+		else if (anyOf != null || noneOf != null)
+			rule = new ScriptSieveRule(parseScripts(anyOf, "anyOf"), parseScripts(noneOf, "noneOf"));
+		else
+			throw new RuntimeException("Configuration Error: missing parameter 'emitIf', 'anyOf' or 'noneOf' for ScriptSieveFilterFactory");
+
+		String statsName = args.get("stats");
+		if (statsName != null)
+			stats = SieveStatistics.forName(statsName);
+	}
+
+	public TokenStream create(TokenStream input)
+	{
+		return new ScriptSieveFilter(input, rule, stats);
+	}
+
+	/**
+	 * @return the rule deciding which values are emitted
+	 */
+	public ScriptSieveRule getRule()
+	{
+		return rule;
+	}
+
+	private static ScriptSet parseScripts(String value, String paramName)
+	{
+		if (value == null || value.trim().length() == 0)
+			return ScriptSet.EMPTY;
+		try
+		{
+			return ScriptSet.forNames(value.trim().split("\\s*,\\s*"));
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new RuntimeException("Configuration Error: parameter '" + paramName + "' for ScriptSieveFilterFactory: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,265 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.io.IOException;
+import java.util.*;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.params.HighlightParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.PluginInfo;
+import org.apache.solr.core.SolrConfig;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.highlight.SolrHighlighter;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocList;
+import org.apache.solr.search.DocSlice;
+import org.apache.solr.util.plugin.PluginInfoInitialized;
+
+/**
+ * Highlighter that skips the fields a sieve rejected for each document, as
+ * recorded at index time by {@link SieveDecisionUpdateProcessorFactory}, so
+ * their stored text isn't analyzed again only to produce no fragments.
+ * Everything else is done by a delegate highlighter, by default Solr's
+ * DefaultSolrHighlighter, which gets the rest of the highlighting
+ * configuration:
+ * <pre class="prettyprint" >
+ * &lt;highlighting class="edu.stanford.solr.analysis.SieveDecisionHighlighter"&gt;
+ *   &lt;str name="delegate"&gt;org.apache.solr.highlight.DefaultSolrHighlighter&lt;/str&gt;
+ *   &lt;str name="rejectedField"&gt;sieve_rejected&lt;/str&gt;
+ *   &lt;fragmenter name="gap" default="true" class="solr.highlight.GapFragmenter"/&gt;
+ * &lt;/highlighting&gt;</pre>
+ *
+ * Documents are grouped by the fields left to highlight, and the delegate is
+ * called once per group with hl.fl set to those fields.  Documents with no
+ * fields left get an empty entry, as the delegate gives them.  If no document
+ * has a rejected field, or the schema has no rejectedField or uniqueKey, the
+ * delegate is called once with the request unchanged.
+ *
+ */
+public class SieveDecisionHighlighter extends SolrHighlighter implements PluginInfoInitialized
+{
+	private static final String DEFAULT_DELEGATE = "org.apache.solr.highlight.DefaultSolrHighlighter";
+
+	private SolrCore core;
+	private SolrHighlighter delegate;
+	private String rejectedField = SieveDecisionUpdateProcessorFactory.DEFAULT_REJECTED_FIELD;
+
+	/**
+	 * for use from solrconfig.xml;  the delegate is created by {@link #init(PluginInfo)}
+	 */
+	public SieveDecisionHighlighter(SolrCore core)
+	{
+		this.core = core;
+	}
+
+	/**
+	 * @param delegate does the highlighting of the fields not rejected
+	 * @param rejectedField the field listing each document's rejected fields
+	 */
+	public SieveDecisionHighlighter(SolrHighlighter delegate, String rejectedField)
+	{
+		this.delegate = delegate;
+		this.rejectedField = rejectedField;
+	}
+
+	public void init(PluginInfo info)
+	{
+		Object rejectedArg = info.initArgs == null ? null : info.initArgs.get("rejectedField");
+		if (rejectedArg != null)
+			rejectedField = rejectedArg.toString();
+		Object delegateArg = info.initArgs == null ? null : info.initArgs.get("delegate");
+		String delegateClass = delegateArg == null ? DEFAULT_DELEGATE : delegateArg.toString();
+		delegate = (SolrHighlighter) core.getResourceLoader().newInstance(delegateClass, new String[] { "highlight." },
+				new Class<?>[] { SolrCore.class }, new Object[] { core });
+		if (delegate instanceof PluginInfoInitialized)
+			((PluginInfoInitialized) delegate).init(info);
+	}
+
+	@Override
+	@Deprecated
+	public void initalize(SolrConfig config)
+	{
+		delegate.initalize(config);
+	}
+
+	/**
+	 * @return the highlighter doing the highlighting of the fields not rejected
+	 */
+	public SolrHighlighter getDelegate()
+	{
+		return delegate;
+	}
+
+	@Override
+	public NamedList<Object> doHighlighting(DocList docs, Query query, SolrQueryRequest req, String[] defaultFields) throws IOException
+	{
+		SolrParams params = req.getParams();
+		if (!isHighlightingEnabled(params) || docs == null || docs.size() == 0 || !hasDecisions(req))
+			return delegate.doHighlighting(docs, query, req, defaultFields);
+
+		String[] fieldNames = getHighlightFields(query, req, defaultFields);
+		int[] ids = new int[docs.size()];
+		String[] keys = new String[ids.length];
+		// doc positions, grouped by the fields left to highlight
+		Map<List<String>,List<Integer>> groups = new LinkedHashMap<List<String>,List<Integer>>();
+		DocIterator iterator = docs.iterator();
+		for (int i = 0; i < ids.length; i++)
+		{
+			ids[i] = iterator.nextDoc();
+			Decision decision = readDecision(req, ids[i]);
+			keys[i] = decision.key;
+			List<String> fields = fieldsToHighlight(fieldNames, decision.rejected);
+			List<Integer> group = groups.get(fields);
+			if (group == null)
+			{
+				group = new ArrayList<Integer>();
+				groups.put(fields, group);
+			}
+			group.add(i);
+		}
+		if (groups.size() == 1 && groups.keySet().iterator().next().size() == fieldNames.length)
+			return delegate.doHighlighting(docs, query, req, defaultFields);
+
+		Map<String,Object> byKey = new HashMap<String,Object>();
+		try
+		{
+			for (Map.Entry<List<String>,List<Integer>> group : groups.entrySet())
+			{
+				List<String> fields = group.getKey();
+				if (fields.isEmpty())
+					continue;
+				List<Integer> positions = group.getValue();
+				int[] groupIds = new int[positions.size()];
+				for (int i = 0; i < groupIds.length; i++)
+					groupIds[i] = ids[positions.get(i)];
+				ModifiableSolrParams groupParams = new ModifiableSolrParams(params);
+				groupParams.set(HighlightParams.FIELDS, join(fields));
+				req.setParams(groupParams);
+				NamedList<Object> result = delegate.doHighlighting(new DocSlice(0, groupIds.length, groupIds, null, groupIds.length, 0.0f), query, req, defaultFields);
+				if (result == null)
+					continue;
+				for (int i = 0; i < result.size(); i++)
+					byKey.put(result.getName(i), result.getVal(i));
+			}
+		}
+		finally
+		{
+			req.setParams(params);
+		}
+
+		NamedList<Object> fragments = new SimpleOrderedMap<Object>();
+		for (String key : keys)
+		{
+			Object summaries = byKey.get(key);
+			fragments.add(key, summaries == null ? new SimpleOrderedMap<Object>() : summaries);
+		}
+		return fragments;
+	}
+
+	/**
+	 * @return true if documents can be matched up by uniqueKey, and have a
+	 *  field listing their rejected fields
+	 */
+	boolean hasDecisions(SolrQueryRequest req)
+	{
+		IndexSchema schema = req.getSchema();
+		return schema.getUniqueKeyField() != null && schema.getFieldOrNull(rejectedField) != null;
+	}
+
+	/**
+	 * @return the printable uniqueKey and the rejected fields of the document
+	 */
+	Decision readDecision(SolrQueryRequest req, int docId) throws IOException
+	{
+		IndexSchema schema = req.getSchema();
+		Set<String> toLoad = new HashSet<String>();
+		toLoad.add(schema.getUniqueKeyField().getName());
+		toLoad.add(rejectedField);
+		Document doc = req.getSearcher().doc(docId, toLoad);
+		return new Decision(schema.printableUniqueKey(doc), doc.getValues(rejectedField));
+	}
+
+	/**
+	 * @return the fields in fieldNames not in rejected, in order
+	 */
+	static List<String> fieldsToHighlight(String[] fieldNames, String[] rejected)
+	{
+		List<String> result = new ArrayList<String>(fieldNames.length);
+		for (String name : fieldNames)
+		{
+			boolean isRejected = false;
+			if (rejected != null)
+			{
+				for (String r : rejected)
+				{
+					if (r.equals(name))
+					{
+						isRejected = true;
+						break;
+					}
+				}
+			}
+			if (!isRejected)
+				result.add(name);
+		}
+		return result;
+	}
+
+	private static String join(List<String> fields)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (String field : fields)
+		{
+			if (sb.length() > 0)
+				sb.append(',');
+			sb.append(field);
+		}
+		return sb.toString();
+	}
+
+	/** a document's uniqueKey and rejected fields */
+	static final class Decision
+	{
+		final String key;
+		final String[] rejected;
+
+		Decision(String key, String[] rejected)
+		{
+			this.key = key;
+			this.rejected = rejected;
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.CopyField;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
+
+/**
+ * Update processor factory that records, for each document, which fields
+ * a {@link CJKSieveFilterFactory} rejected entirely, so that
+ * {@link SieveDecisionHighlighter} can skip highlighting them.
+ * <pre class="prettyprint" >
+ * &lt;updateRequestProcessorChain name="sieve"&gt;
+ *   &lt;processor class="edu.stanford.solr.analysis.SieveDecisionUpdateProcessorFactory"&gt;
+ *     &lt;str name="fields"&gt;title_ja, title_ko, title_han, title_latin&lt;/str&gt;
+ *     &lt;str name="rejectedField"&gt;sieve_rejected&lt;/str&gt;
+ *   &lt;/processor&gt;
+ *   &lt;processor class="solr.RunUpdateProcessorFactory"/&gt;
+ * &lt;/updateRequestProcessorChain&gt;
+ *
+ * &lt;field name="sieve_rejected" type="string" indexed="false" stored="true" multiValued="true"/&gt;</pre>
+ *
+ * Each value of a listed field, and of its copyField sources (up to
+ * maxChars), is run through the field's index analyzer until it gives a
+ * token;  a field is rejected if it has values and none gives a token.  The
+ * decision is the analyzer's own, so script hints, budgets and reloaded
+ * rules are all taken into account.  The names of rejected fields are added
+ * to rejectedField (default sieve_rejected).
+ * <p>
+ * This is an extra analysis of every listed field's values at index time, on
+ * top of the one done when the document is indexed.  CJKSieveFilter decides a
+ * value only after reading all of its tokens, so every value is tokenized to
+ * the end before it gives its first token or none;  stopping at the first
+ * token saves only the filters after the sieve, for emitted values.  Unless
+ * script hints decide the values, the tokenizing and filtering up to the
+ * sieve is roughly doubled for the listed fields, including the rejected
+ * values this is meant for.  The decision can't be taken from the indexing
+ * pass instead, as it must be stored in the document before it is indexed.
+ *
+ */
+public class SieveDecisionUpdateProcessorFactory extends UpdateRequestProcessorFactory
+{
+	/** the default name of the field listing the rejected fields */
+	public static final String DEFAULT_REJECTED_FIELD = "sieve_rejected";
+
+	private String[] fields;
+	private String rejectedField;
+
+	@Override
+	public void init(@SuppressWarnings("rawtypes") NamedList args)
+	{
+		super.init(args);
+
+		Object fieldsArg = args.get("fields");
+		String fieldsStr = fieldsArg == null ? null : fieldsArg.toString().trim();
+		if (fieldsStr == null || fieldsStr.length() == 0)
+			throw new RuntimeException("Configuration Error: missing parameter 'fields' for SieveDecisionUpdateProcessorFactory");
+		fields = fieldsStr.split("\\s*,\\s*");
+
+		Object rejectedArg = args.get("rejectedField");
+		rejectedField = rejectedArg == null ? DEFAULT_REJECTED_FIELD : rejectedArg.toString();
+	}
+
+	@Override
+	public UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next)
+	{
+		return new SieveDecisionUpdateProcessor(req == null ? null : req.getSchema(), next);
+	}
+
+	/**
+	 * @return the name of the field listing the rejected fields
+	 */
+	public String getRejectedField()
+	{
+		return rejectedField;
+	}
+
+	/**
+	 * @return the index analyzer of the field, or null if it is not an
+	 *  indexed field of the schema
+	 */
+	Analyzer getIndexAnalyzer(IndexSchema schema, String field)
+	{
+		if (schema == null)
+			return null;
+		SchemaField schemaField = schema.getFieldOrNull(field);
+		if (schemaField == null || !schemaField.indexed())
+			return null;
+		return schemaField.getType().getAnalyzer();
+	}
+
+	/**
+	 * add the values copied to the field from its copyField sources
+	 */
+	void addCopiedValues(IndexSchema schema, SolrInputDocument doc, String field, List<String> values)
+	{
+		if (schema == null)
+			return;
+		for (SchemaField source : schema.getCopySources(field))
+		{
+			Collection<Object> sourceValues = doc.getFieldValues(source.getName());
+			if (sourceValues == null)
+				continue;
+			for (CopyField copyField : schema.getCopyFieldsList(source.getName()))
+			{
+				if (!copyField.getDestination().getName().equals(field))
+					continue;
+				for (Object value : sourceValues)
+				{
+					if (value instanceof CharSequence)
+						values.add(copyField.getLimitedValue(value.toString()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if the analyzer gives at least one token for the value
+	 */
+	private static boolean emits(Analyzer analyzer, String field, String value) throws IOException
+	{
+		TokenStream ts = analyzer.reusableTokenStream(field, new StringReader(value));
+		try
+		{
+			ts.reset();
+			boolean emitted = ts.incrementToken();
+			ts.end();
+			return emitted;
+		}
+		finally
+		{
+			ts.close();
+		}
+	}
+
+	class SieveDecisionUpdateProcessor extends UpdateRequestProcessor
+	{
+		/** may be null, when no field can be decided */
+		private final IndexSchema schema;
+
+		SieveDecisionUpdateProcessor(IndexSchema schema, UpdateRequestProcessor next)
+		{
+			super(next);
+			this.schema = schema;
+		}
+
+		@Override
+		public void processAdd(AddUpdateCommand cmd) throws IOException
+		{
+			SolrInputDocument doc = cmd.getSolrInputDocument();
+			doc.removeField(rejectedField);
+			List<String> values = new ArrayList<String>();
+			for (String field : fields)
+			{
+				Analyzer analyzer = getIndexAnalyzer(schema, field);
+				if (analyzer == null)
+					continue;
+				values.clear();
+				Collection<Object> ownValues = doc.getFieldValues(field);
+				if (ownValues != null)
+				{
+					for (Object value : ownValues)
+					{
+						if (value instanceof CharSequence)
+							values.add(value.toString());
+					}
+				}
+				addCopiedValues(schema, doc, field, values);
+				if (values.isEmpty())
+					continue;
+
+				boolean emitted = false;
+				for (String value : values)
+				{
+					if (emits(analyzer, field, value))
+					{
+						emitted = true;
+						break;
+					}
+				}
+				if (!emitted)
+					doc.addField(rejectedField, field);
+			}
+			super.processAdd(cmd);
+		}
+	}
+}
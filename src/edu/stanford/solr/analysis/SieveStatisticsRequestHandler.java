@@ -0,0 +1,163 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.handler.RequestHandlerBase;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+
+import edu.stanford.lucene.analysis.cjk.CJKEmitType;
+import edu.stanford.lucene.analysis.cjk.SieveStatistics;
+import edu.stanford.lucene.analysis.cjk.StageTiming;
+
+/**
+ * Reports the {@link SieveStatistics} of CJKSieveFilterFactory instances
+ * with a stats attribute, and the {@link StageTiming}s recorded by
+ * StageTimingFilterFactory.  The same information is included in the
+ * handler's statistics on the admin stats page.
+ * <p>
+ * For each shadow emit type evaluated, the sieve statistics include the
+ * values evaluated, agreements and disagreements with the real rules, the
+ * values and tokens the shadow would have emitted, and the change in tokens
+ * emitted had the shadow been the real rule.
+ * <pre class="prettyprint" >
+ * &lt;requestHandler name="/admin/sieve" class="edu.stanford.solr.analysis.SieveStatisticsRequestHandler"/&gt;</pre>
+ *
+ */
+public class SieveStatisticsRequestHandler extends RequestHandlerBase
+{
+	@Override
+	public void handleRequestBody(SolrQueryRequest req, SolrQueryResponse rsp) throws Exception
+	{
+		rsp.add("sieve", getSieveStatistics());
+		rsp.add("stages", getStageTimings());
+	}
+
+	@Override
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public NamedList getStatistics()
+	{
+		NamedList lst = super.getStatistics();
+		lst.add("sieve", getSieveStatistics());
+		lst.add("stages", getStageTimings());
+		return lst;
+	}
+
+	static NamedList<Object> getSieveStatistics()
+	{
+		NamedList<Object> result = new SimpleOrderedMap<Object>();
+		for (Map.Entry<String, SieveStatistics> entry : SieveStatistics.getAll().entrySet())
+		{
+			SieveStatistics stats = entry.getValue();
+			NamedList<Object> lst = new SimpleOrderedMap<Object>();
+			lst.add("values", stats.getValues());
+			lst.add("valuesEmitted", stats.getValuesEmitted());
+			lst.add("valuesSuppressed", stats.getValues() - stats.getValuesEmitted());
+			lst.add("tokens", stats.getTokens());
+			lst.add("tokensEmitted", stats.getTokensEmitted());
+			lst.add("budgetExceeded", stats.getBudgetExceeded());
+			NamedList<Object> shadows = getShadows(stats);
+			if (shadows.size() > 0)
+				lst.add("shadows", shadows);
+			result.add(entry.getKey(), lst);
+		}
+		return result;
+	}
+
+	private static NamedList<Object> getShadows(SieveStatistics stats)
+	{
+		NamedList<Object> result = new SimpleOrderedMap<Object>();
+		for (CJKEmitType shadow : CJKEmitType.values())
+		{
+			long values = stats.getShadowValues(shadow);
+			if (values == 0)
+				continue;
+			long agreements = stats.getShadowAgreements(shadow);
+			NamedList<Object> lst = new SimpleOrderedMap<Object>();
+			lst.add("values", values);
+			lst.add("agreements", agreements);
+			lst.add("disagreements", values - agreements);
+			lst.add("valuesEmitted", stats.getShadowValuesEmitted(shadow));
+			lst.add("tokensEmitted", stats.getShadowTokensEmitted(shadow));
+			lst.add("tokensEmittedChange", stats.getShadowTokensEmitted(shadow) - stats.getShadowActualTokensEmitted(shadow));
+			result.add(shadow.name().toLowerCase(Locale.ROOT), lst);
+		}
+		return result;
+	}
+
+	static NamedList<Object> getStageTimings()
+	{
+		NamedList<Object> result = new SimpleOrderedMap<Object>();
+		for (Map.Entry<String, StageTiming> entry : StageTiming.getAll().entrySet())
+		{
+			StageTiming timing = entry.getValue();
+			long sampled = timing.getSampledValues();
+			NamedList<Object> lst = new SimpleOrderedMap<Object>();
+			lst.add("values", timing.getValues());
+			lst.add("tokensIn", timing.getTokensIn());
+			lst.add("tokensOut", timing.getTokensOut());
+			lst.add("sampledValues", sampled);
+			lst.add("meanMicros", sampled == 0 ? 0.0 : timing.getStageNanos() / 1000.0 / sampled);
+			lst.add("upstreamMeanMicros", sampled == 0 ? 0.0 : timing.getUpstreamNanos() / 1000.0 / sampled);
+			lst.add("p50Micros", timing.getPercentileNanos(50) / 1000.0);
+			lst.add("p90Micros", timing.getPercentileNanos(90) / 1000.0);
+			lst.add("p99Micros", timing.getPercentileNanos(99) / 1000.0);
+			result.add(entry.getKey(), lst);
+		}
+		return result;
+	}
+
+	@Override
+	public String getDescription()
+	{
+		return "CJKSieve statistics and analysis stage timings";
+	}
+
+	@Override
+	public String getSource()
+	{
+		return "https://github.com/sul-dlss/CJKSieve";
+	}
+
+	@Override
+	public String getSourceId()
+	{
+		return getClass().getName();
+	}
+
+	@Override
+	public String getVersion()
+	{
+		return "1.0";
+	}
+}
@@ -0,0 +1,123 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.solr.analysis.BaseTokenFilterFactory;
+import org.apache.solr.analysis.TokenFilterFactory;
+import org.apache.solr.common.ResourceLoader;
+import org.apache.solr.util.plugin.ResourceLoaderAware;
+
+import edu.stanford.lucene.analysis.cjk.StageTiming;
+import edu.stanford.lucene.analysis.cjk.StageTimingFilter;
+
+/**
+ * Wraps another filter factory so the time and token counts of its filter
+ * are recorded in a {@link StageTiming}, viewable with
+ * {@link SieveStatisticsRequestHandler}.  All attributes other than those
+ * below are passed to the wrapped factory.
+ * <ul>
+ *  <li>delegate: class of the wrapped filter factory (required)</li>
+ *  <li>stage: name of the StageTiming (default: the delegate class name)</li>
+ *  <li>sampleEvery: time one value in this many (default 100);  token counts are kept for every value</li>
+ *  <li>enabled: if false, the wrapped filter is created without any timing (default true)</li>
+ * </ul>
+ * The time of the tokenizer, and of any filters not wrapped, is included in
+ * the upstream time of the next wrapped stage.
+ * <pre class="prettyprint" >
+ * &lt;fieldType name="text_ja" class="solr.TextField"&gt;
+ *   &lt;analyzer&gt;
+ *     &lt;tokenizer class="solr.JapaneseTokenizerFactory" mode="search"/&gt;
+ *     &lt;filter class="edu.stanford.solr.analysis.StageTimingFilterFactory" stage="text_ja sieve"
+ *       delegate="edu.stanford.solr.analysis.CJKSieveFilterFactory" emitIf="japanese" stats="text_ja"/&gt;
+ *     &lt;filter class="edu.stanford.solr.analysis.StageTimingFilterFactory" stage="text_ja baseform"
+ *       delegate="solr.JapaneseBaseFormFilterFactory"/&gt;
+ *     ...
+ *   &lt;/analyzer&gt;
+ * &lt;/fieldType&gt;</pre>
+ *
+ */
+public class StageTimingFilterFactory extends BaseTokenFilterFactory implements ResourceLoaderAware
+{
+	private String delegateClass;
+	private Map<String,String> delegateArgs;
+	private TokenFilterFactory delegate;
+	private StageTiming timing;
+	private int sampleEvery;
+	private boolean enabled;
+
+	@Override
+	public void init(Map<String,String> args)
+	{
+		super.init(args);
+
+		delegateClass = args.get("delegate");
+		if (delegateClass == null)
+			throw new RuntimeException("Configuration Error: missing parameter 'delegate' for StageTimingFilterFactory");
+		enabled = getBoolean("enabled", true);
+		sampleEvery = getInt("sampleEvery", 100);
+		if (sampleEvery < 1)
+			throw new RuntimeException("Configuration Error: parameter 'sampleEvery' for StageTimingFilterFactory must be at least 1");
+		String stage = args.get("stage");
+		timing = StageTiming.forName(stage == null ? delegateClass : stage);
+
+		delegateArgs = new HashMap<String,String>(args);
+		delegateArgs.remove("delegate");
+		delegateArgs.remove("stage");
+		delegateArgs.remove("sampleEvery");
+		delegateArgs.remove("enabled");
+	}
+
+	public void inform(ResourceLoader loader)
+	{
+		delegate = (TokenFilterFactory) loader.newInstance(delegateClass);
+		delegate.init(delegateArgs);
+		if (delegate instanceof ResourceLoaderAware)
+			((ResourceLoaderAware) delegate).inform(loader);
+	}
+
+	public TokenStream create(TokenStream input)
+	{
+		if (!enabled)
+			return delegate.create(input);
+
+		StageTimingFilter.UpstreamProbe probe = new StageTimingFilter.UpstreamProbe(input);
+		return new StageTimingFilter(delegate.create(probe), probe, timing, sampleEvery);
+	}
+
+	/**
+	 * @return the wrapped filter factory
+	 */
+	public TokenFilterFactory getDelegate()
+	{
+		return delegate;
+	}
+}
@@ -0,0 +1,352 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a reproducible corpus of field values with a controlled mix of
+ * scripts, for benchmarks and stress tests of the sieve.
+ * <p>
+ * The same seed and settings always produce the same values, in the same
+ * order, on any JVM (java.util.Random's algorithm is part of its spec).
+ * Values are drawn from the {@link Mix}es in proportion to their weights;
+ * value lengths follow an exponential distribution with the given mean,
+ * bounded by the given minimum and maximum;  and a fraction of the values
+ * (the repeat rate) are copies of recently generated values, as in real
+ * data where titles and names recur.
+ * <p>
+ * Only BMP characters are generated, and all CJK characters are from the
+ * ranges {@link CJKScriptClassifier} assigns to a single script.
+ *
+ */
+public class SyntheticCJKCorpus
+{
+	/** kinds of values the corpus can contain */
+	public enum Mix
+	{
+		/** Latin words only */
+		LATIN,
+		/** Han characters only */
+		HAN,
+		/** kanji with hiragana okurigana and particles, and katakana words */
+		JAPANESE,
+		/** Hangul words */
+		HANGUL,
+		/** words from all of the above scripts */
+		MIXED,
+		/** Latin words with a single stray Han, kana or Hangul character */
+		NOISE
+	}
+
+	/** how many of the most recent values can be repeated */
+	private static final int REPEAT_WINDOW = 1000;
+
+	private static final char[] SENTENCE_ENDS = { '。', '！', '？' };
+
+	private final Random random;
+	private final double[] weights = new double[Mix.values().length];
+	private int minLength = 1;
+	private int meanLength = 40;
+	private int maxLength = 1000;
+	private double repeatRate = 0.0;
+
+	private final List<String> recent = new ArrayList<String>();
+	private Mix lastMix;
+
+	/**
+	 * a corpus with equal weights for all mixes, a mean length of 40 chars
+	 * and no repeats
+	 */
+	public SyntheticCJKCorpus(long seed)
+	{
+		random = new Random(seed);
+		for (int i = 0; i < weights.length; i++)
+			weights[i] = 1.0;
+	}
+
+	/**
+	 * @param weight relative frequency of the mix;  0 to exclude it
+	 */
+	public void setWeight(Mix mix, double weight)
+	{
+		if (weight < 0)
+			throw new IllegalArgumentException("weight must not be negative: " + weight);
+		weights[mix.ordinal()] = weight;
+	}
+
+	/** only generate values of the given mix */
+	public void setOnly(Mix mix)
+	{
+		for (int i = 0; i < weights.length; i++)
+			weights[i] = 0.0;
+		weights[mix.ordinal()] = 1.0;
+	}
+
+	/**
+	 * @param min minimum value length, in chars
+	 * @param mean mean value length, in chars, before the maximum is applied
+	 * @param max maximum value length, in chars
+	 */
+	public void setLengths(int min, int mean, int max)
+	{
+		if (min < 1 || mean < min || max < mean)
+			throw new IllegalArgumentException("lengths must satisfy 1 <= min <= mean <= max: " + min + ", " + mean + ", " + max);
+		minLength = min;
+		meanLength = mean;
+		maxLength = max;
+	}
+
+	/**
+	 * @param repeatRate fraction of values that repeat a recent value, 0.0 to 1.0
+	 */
+	public void setRepeatRate(double repeatRate)
+	{
+		if (repeatRate < 0.0 || repeatRate > 1.0)
+			throw new IllegalArgumentException("repeatRate must be between 0 and 1: " + repeatRate);
+		this.repeatRate = repeatRate;
+	}
+
+	/** the mix of the value last returned by {@link #next()} */
+	public Mix getLastMix()
+	{
+		return lastMix;
+	}
+
+	/** generate the next value */
+	public String next()
+	{
+		if (random.nextDouble() < repeatRate && !recent.isEmpty())
+		{
+			String value = recent.get(random.nextInt(recent.size()));
+			lastMix = null;
+			remember(value);
+			return value;
+		}
+
+		lastMix = pickMix();
+		int target = targetLength();
+		StringBuilder sb = new StringBuilder(target + 16);
+		int noiseAt = lastMix == Mix.NOISE ? random.nextInt(target) : -1;
+		while (sb.length() < target)
+		{
+			if (sb.length() > 0 && needsSpace(lastMix))
+				sb.append(' ');
+			appendWord(sb, lastMix);
+			if (noiseAt >= 0 && sb.length() > noiseAt)
+			{
+				sb.append(' ');
+				appendNoiseChar(sb);
+				noiseAt = -1;
+			}
+		}
+		if (sb.length() > maxLength)
+			sb.setLength(maxLength);
+		if (lastMix == Mix.NOISE && CJKScriptClassifier.scriptMask(sb) == 0)
+		{
+			// the stray character was lost by truncation
+			sb.setLength(sb.length() - 1);
+			appendNoiseChar(sb);
+		}
+		String value = sb.toString();
+		remember(value);
+		return value;
+	}
+
+	/** generate count values */
+	public List<String> next(int count)
+	{
+		List<String> values = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++)
+			values.add(next());
+		return values;
+	}
+
+	/**
+	 * write count values, one per line
+	 */
+	public void write(Writer out, int count) throws IOException
+	{
+		for (int i = 0; i < count; i++)
+		{
+			out.write(next());
+			out.write('\n');
+		}
+		out.flush();
+	}
+
+	/**
+	 * Write a corpus to a UTF-8 file, one value per line.
+	 * <p>
+	 * Arguments:  seed count file [minLength meanLength maxLength [repeatRate]]
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 3)
+		{
+			System.err.println("usage: SyntheticCJKCorpus seed count file [minLength meanLength maxLength [repeatRate]]");
+			System.exit(1);
+		}
+		SyntheticCJKCorpus corpus = new SyntheticCJKCorpus(Long.parseLong(args[0]));
+		if (args.length >= 6)
+			corpus.setLengths(Integer.parseInt(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+		if (args.length >= 7)
+			corpus.setRepeatRate(Double.parseDouble(args[6]));
+		Writer out = new OutputStreamWriter(new FileOutputStream(args[2]), "UTF-8");
+		try
+		{
+			corpus.write(out, Integer.parseInt(args[1]));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+
+	private void remember(String value)
+	{
+		if (recent.size() < REPEAT_WINDOW)
+			recent.add(value);
+		else
+			recent.set(random.nextInt(REPEAT_WINDOW), value);
+	}
+
+	private Mix pickMix()
+	{
+		double total = 0.0;
+		for (double w : weights)
+			total += w;
+		if (total == 0.0)
+			throw new IllegalStateException("all mix weights are 0");
+		double r = random.nextDouble() * total;
+		Mix[] mixes = Mix.values();
+		for (int i = 0; i < mixes.length; i++)
+		{
+			r -= weights[i];
+			if (r < 0.0 && weights[i] > 0.0)
+				return mixes[i];
+		}
+		// rounding:  the last mix with any weight
+		for (int i = mixes.length - 1; ; i--)
+			if (weights[i] > 0.0)
+				return mixes[i];
+	}
+
+	private int targetLength()
+	{
+		if (meanLength == minLength)
+			return minLength;
+		double exp = -Math.log(1.0 - random.nextDouble()) * (meanLength - minLength);
+		return (int) Math.min(maxLength, minLength + exp);
+	}
+
+	private static boolean needsSpace(Mix mix)
+	{
+		return mix != Mix.HAN && mix != Mix.JAPANESE;
+	}
+
+	private void appendWord(StringBuilder sb, Mix mix)
+	{
+		switch (mix)
+		{
+			case LATIN:
+			case NOISE:
+				appendLatin(sb, 2 + random.nextInt(7));
+				break;
+			case HAN:
+				appendRange(sb, 0x4E00, 0x9FA5, 1 + random.nextInt(4));
+				maybeEndSentence(sb);
+				break;
+			case JAPANESE:
+				appendJapanese(sb);
+				maybeEndSentence(sb);
+				break;
+			case HANGUL:
+				appendRange(sb, 0xAC00, 0xD7A3, 2 + random.nextInt(3));
+				break;
+			case MIXED:
+				Mix[] choices = { Mix.LATIN, Mix.HAN, Mix.JAPANESE, Mix.HANGUL };
+				appendWord(sb, choices[random.nextInt(choices.length)]);
+				break;
+		}
+	}
+
+	/** kanji with hiragana okurigana, or a katakana word, followed by a particle */
+	private void appendJapanese(StringBuilder sb)
+	{
+		if (random.nextInt(4) == 0)
+			appendRange(sb, 0x30A1, 0x30F6, 2 + random.nextInt(5));
+		else
+		{
+			appendRange(sb, 0x4E00, 0x9FA5, 1 + random.nextInt(3));
+			appendRange(sb, 0x3041, 0x3093, random.nextInt(3));
+		}
+		appendRange(sb, 0x3041, 0x3093, 1);
+	}
+
+	private void appendNoiseChar(StringBuilder sb)
+	{
+		switch (random.nextInt(4))
+		{
+			case 0:
+				appendRange(sb, 0x4E00, 0x9FA5, 1);
+				break;
+			case 1:
+				appendRange(sb, 0x3041, 0x3093, 1);
+				break;
+			case 2:
+				appendRange(sb, 0x30A1, 0x30F6, 1);
+				break;
+			default:
+				appendRange(sb, 0xAC00, 0xD7A3, 1);
+		}
+	}
+
+	private void maybeEndSentence(StringBuilder sb)
+	{
+		if (random.nextInt(8) == 0)
+			sb.append(SENTENCE_ENDS[random.nextInt(SENTENCE_ENDS.length)]);
+	}
+
+	private void appendLatin(StringBuilder sb, int len)
+	{
+		for (int i = 0; i < len; i++)
+			sb.append((char) ('a' + random.nextInt(26)));
+	}
+
+	/** append len chars from the inclusive range first..last */
+	private void appendRange(StringBuilder sb, int first, int last, int len)
+	{
+		for (int i = 0; i < len; i++)
+			sb.append((char) (first + random.nextInt(last - first + 1)));
+	}
+}
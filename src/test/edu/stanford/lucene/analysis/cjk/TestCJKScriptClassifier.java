@@ -0,0 +1,138 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import static edu.stanford.lucene.analysis.cjk.CJKScriptClassifier.*;
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for CJKScriptClassifier
+ */
+public class TestCJKScriptClassifier extends LuceneTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+@Test
+	public void testScriptMask()
+	{
+		assertEquals(HAN, scriptMask("南滿洲鐵道株式會社 traditional han"));
+		assertEquals(HAN | HIRAGANA, scriptMask("近世仮名遣い論の研究"));
+		assertEquals(KATAKANA, scriptMask("マンガ is katakana"));
+		assertEquals(HAN | HIRAGANA | KATAKANA, scriptMask("日本マンガを知るためのブック・ガイド"));
+		assertEquals(HANGUL | HAN, scriptMask("한국사 의 壇君 인식"));
+		assertEquals(0, scriptMask("No CJK here ... Des mot clés À LA CHAÎNE À Á "));
+		assertEquals(0, scriptMask(""));
+	}
+
+@Test
+	public void testRanges()
+	{
+		String s = "abc 한국경제 マンガ";
+		assertEquals(0, scriptMask(s, 0, 4));
+		assertEquals(HANGUL, scriptMask(s, 2, 8));
+		assertEquals(KATAKANA, scriptMask(s.toCharArray(), 9, 3));
+		assertEquals(HANGUL | KATAKANA, scriptMask(s.toCharArray(), 0, s.length()));
+	}
+
+@Test
+	public void testSupplementaryHan()
+	{
+		// U+20000 CJK Unified Ideographs Extension B
+		String s = new StringBuilder("x").appendCodePoint(0x20000).toString();
+		assertEquals(HAN, scriptMask(s));
+		assertEquals(HAN, scriptMask(s.toCharArray(), 0, s.length()));
+		int[] counts = new int[NUM_COUNTS];
+		countScripts(s, 0, s.length(), counts);
+		assertEquals(1, counts[HAN_INDEX]);
+	}
+
+@Test
+	public void testScriptBitMatchesUScriptOutsideFastRanges()
+	{
+		assertEquals(HAN, scriptBit('々'));
+		assertEquals(HIRAGANA, scriptBit('ゟ'));
+		assertEquals(KATAKANA, scriptBit('ㇰ'));
+		assertEquals(HANGUL, scriptBit('ㄱ'));
+		assertEquals(0, scriptBit('ー'));  // prolonged sound mark is Common
+		assertEquals(0, scriptBit('。'));
+	}
+
+@Test
+	public void testCounts()
+	{
+		int[] counts = new int[NUM_COUNTS];
+		int mask = countScripts("日本マンガを知るための", 0, 11, counts);
+		assertEquals(HAN | HIRAGANA | KATAKANA, mask);
+		assertEquals(3, counts[HAN_INDEX]);
+		assertEquals(5, counts[HIRAGANA_INDEX]);
+		assertEquals(3, counts[KATAKANA_INDEX]);
+		assertEquals(0, counts[HANGUL_INDEX]);
+
+		// counts accumulate
+		char[] buf = "한국 hangul".toCharArray();
+		countScripts(buf, 0, buf.length, counts);
+		assertEquals(2, counts[HANGUL_INDEX]);
+		assertEquals(3, counts[HAN_INDEX]);
+	}
+
+@Test
+	public void testBulk()
+	{
+		CharSequence[] values = { "한국경제", "no cjk", null, "仏教学", new StringBuilder("マンガ") };
+		int[] masks = new int[values.length];
+		scriptMasks(values, masks);
+		assertTrue(Arrays.equals(new int[] { HANGUL, 0, 0, HAN, KATAKANA }, masks));
+
+		int[] counts = new int[NUM_COUNTS];
+		assertEquals(HANGUL | HAN | KATAKANA, countScripts(values, counts));
+		assertTrue(Arrays.equals(new int[] { 3, 0, 3, 4 }, counts));
+	}
+
+@Test
+	public void testEmits()
+	{
+		assertTrue(emits(CJKEmitType.HANGUL, HANGUL | HAN));
+		assertFalse(emits(CJKEmitType.HANGUL, HAN));
+		assertTrue(emits(CJKEmitType.JAPANESE, KATAKANA));
+		assertFalse(emits(CJKEmitType.JAPANESE, HAN));
+		assertTrue(emits(CJKEmitType.HAN_SOLO, HAN));
+		assertFalse(emits(CJKEmitType.HAN_SOLO, HAN | HIRAGANA));
+		assertTrue(emits(CJKEmitType.CJ, HAN | KATAKANA));
+		assertFalse(emits(CJKEmitType.CJ, HAN | HANGUL));
+		assertTrue(emits(CJKEmitType.ANY_CJK, HANGUL));
+		assertFalse(emits(CJKEmitType.ANY_CJK, 0));
+		assertTrue(emits(CJKEmitType.NO_CJK, 0));
+		assertFalse(emits(CJKEmitType.NO_CJK, HIRAGANA));
+	}
+}
@@ -0,0 +1,205 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.*;
+
+import org.apache.lucene.analysis.*;
+import org.apache.lucene.analysis.cjk.CJKBigramFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.*;
+import org.apache.lucene.util._TestUtil;
+import org.junit.*;
+
+/**
+ * Tests for CJKSieveBigramFilter
+ */
+public class TestCJKSieveBigramFilter extends BaseTokenStreamTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+	private static final int ALL = CJKBigramFilter.HAN | CJKBigramFilter.HIRAGANA | CJKBigramFilter.KATAKANA | CJKBigramFilter.HANGUL;
+
+@Test
+	public void testBigrams() throws Exception
+	{
+		Analyzer a = getFusedAnalyzer(CJKEmitType.ANY_CJK, ALL);
+		assertAnalyzesTo(a, "多くの学生が試験に落ちた。",
+			new String[] { "多く", "くの", "の学", "学生", "生が", "が試", "試験", "験に", "に落", "落ち", "ちた" },
+			new int[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 },  // startOffsets
+			new int[] { 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 },  // endOffsets
+			new String[] { "<DOUBLE>", "<DOUBLE>", "<DOUBLE>", "<DOUBLE>", "<DOUBLE>", "<DOUBLE>", "<DOUBLE>", "<DOUBLE>", "<DOUBLE>", "<DOUBLE>", "<DOUBLE>" },
+			new int[] { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 });  // positionIncrements
+		assertAnalyzesTo(a, "一 two 三四 한",
+			new String[] { "一", "two", "三四", "한" },
+			new String[] { "<SINGLE>", "<ALPHANUM>", "<DOUBLE>", "<SINGLE>" });
+		assertAnalyzesTo(a, "no cjk", new String[] {});
+	}
+
+@Test
+	public void testSieve() throws Exception
+	{
+		Analyzer a = getFusedAnalyzer(CJKEmitType.HANGUL, ALL);
+		assertAnalyzesTo(a, "한국어 test", new String[] { "한국", "국어", "test" });
+		assertAnalyzesTo(a, "日本語 test", new String[] {});
+		a = getFusedAnalyzer(CJKEmitType.NO_CJK, ALL);
+		assertAnalyzesTo(a, "no cjk", new String[] { "no", "cjk" });
+		assertAnalyzesTo(a, "日本語 test", new String[] {});
+	}
+
+@Test
+	public void testFlags() throws Exception
+	{
+		Analyzer a = getFusedAnalyzer(CJKEmitType.ANY_CJK, CJKBigramFilter.HANGUL);
+		assertAnalyzesTo(a, "日本語 한국어", new String[] { "日", "本", "語", "한국", "국어" });
+	}
+
+@Test
+	public void testStats() throws Exception
+	{
+		final SieveStatistics stats = SieveStatistics.forName("TestCJKSieveBigramFilter.stats");
+		final CJKSieveRules rules = new CJKSieveRules(CJKEmitType.JAPANESE);
+		Analyzer a = new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				return new TokenStreamComponents(t, new CJKSieveBigramFilter(t, new CJKSieveRules.Source()
+				{
+					public CJKSieveRules getRules()
+					{
+						return rules;
+					}
+				}, stats, ALL));
+			}
+		};
+		assertAnalyzesToReuse(a, "日本マンガ", new String[] { "日本", "本マ", "マン", "ンガ" });
+		assertAnalyzesToReuse(a, "日本", new String[] {});
+		assertEquals(2, stats.getValues());
+		assertEquals(1, stats.getValuesEmitted());
+		// input tokens, as for CJKSieveFilter
+		assertEquals(5, stats.getTokens());
+		assertEquals(3, stats.getTokensEmitted());
+	}
+
+	/**
+	 * the fused filter gives the same tokens as CJKSieveFilter followed by CJKBigramFilter
+	 */
+@Test
+	public void testSameAsSeparateFilters() throws Exception
+	{
+		SyntheticCJKCorpus corpus = new SyntheticCJKCorpus(random.nextLong());
+		corpus.setLengths(1, 40, 500);
+		int[] flagSets = { ALL, CJKBigramFilter.HAN, CJKBigramFilter.HANGUL | CJKBigramFilter.KATAKANA, 0 };
+		for (CJKEmitType emitType : CJKEmitType.values())
+		{
+			for (int flags : flagSets)
+			{
+				Analyzer fused = getFusedAnalyzer(emitType, flags);
+				Analyzer separate = getSeparateAnalyzer(emitType, flags);
+				for (int i = 0; i < 50 * RANDOM_MULTIPLIER; i++)
+				{
+					String text = corpus.next();
+					assertEquals(text, tokens(separate, text), tokens(fused, text));
+					text = _TestUtil.randomRealisticUnicodeString(random, 50);
+					assertEquals(text, tokens(separate, text), tokens(fused, text));
+				}
+			}
+		}
+	}
+
+@Test
+	public void testRandomStrings() throws Exception
+	{
+		checkRandomData(random, getFusedAnalyzer(CJKEmitType.ANY_CJK, ALL), 1000 * RANDOM_MULTIPLIER);
+		checkRandomData(random, getFusedAnalyzer(CJKEmitType.NO_CJK, ALL), 1000 * RANDOM_MULTIPLIER);
+	}
+
+	/**
+	 * @return term, offsets, type and position increment of each token, and the final offset
+	 */
+	private static String tokens(Analyzer a, String text) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		TokenStream ts = a.reusableTokenStream("dummy", new StringReader(text));
+		CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+		OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+		TypeAttribute typeAtt = ts.addAttribute(TypeAttribute.class);
+		PositionIncrementAttribute posIncAtt = ts.addAttribute(PositionIncrementAttribute.class);
+		ts.reset();
+		while (ts.incrementToken())
+			sb.append(termAtt).append('/').append(offsetAtt.startOffset()).append('-').append(offsetAtt.endOffset())
+				.append('/').append(typeAtt.type()).append('/').append(posIncAtt.getPositionIncrement()).append(' ');
+		ts.end();
+		sb.append(offsetAtt.endOffset());
+		ts.close();
+		return sb.toString();
+	}
+
+	/**
+	 * @return Analyzer of a StandardTokenizer followed by CJKSieveBigramFilter
+	 */
+	private Analyzer getFusedAnalyzer(final CJKEmitType emitType, final int flags)
+	{
+		final CJKSieveRules rules = new CJKSieveRules(emitType);
+		return new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				return new TokenStreamComponents(t, new CJKSieveBigramFilter(t, new CJKSieveRules.Source()
+				{
+					public CJKSieveRules getRules()
+					{
+						return rules;
+					}
+				}, null, flags));
+			}
+		};
+	}
+
+	/**
+	 * @return Analyzer of a StandardTokenizer followed by CJKSieveFilter and CJKBigramFilter
+	 */
+	private Analyzer getSeparateAnalyzer(final CJKEmitType emitType, final int flags)
+	{
+		return new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				return new TokenStreamComponents(t, new CJKBigramFilter(new CJKSieveFilter(t, emitType), flags));
+			}
+		};
+	}
+}
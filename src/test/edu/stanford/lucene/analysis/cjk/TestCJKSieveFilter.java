@@ -447,6 +447,260 @@ public class TestCJKSieveFilter extends BaseTokenStreamTestCase
 		assertAnalyzesTo(han_solo, "No CJK here ... Des mot clés À LA CHAÎNE À Á ", new String[] {});
 	}
 
+	/**
+	 * scripts seen in one value must not affect the next value analyzed by a reused stream
+	 */
+@Test
+	public void testReusedStreamForgetsScripts() throws Exception
+	{
+		Analyzer hangul = getStdTokenAnalyzer(CJKEmitType.HANGUL);
+		assertAnalyzesToReuse(hangul, "한국경제 hangul", new String[] { "한국경제", "hangul" });
+		assertAnalyzesToReuse(hangul, "no hangul here", new String[] {});
+
+		Analyzer no_cjk = getStdTokenAnalyzer(CJKEmitType.NO_CJK);
+		assertAnalyzesToReuse(no_cjk, "マンガ is katakana", new String[] {});
+		assertAnalyzesToReuse(no_cjk, "No CJK here", new String[] { "No", "CJK", "here" });
+	}
+
+@Test
+	public void testBudgetMaxTokens() throws Exception
+	{
+		// the first three tokens decide
+		SieveStatistics stats = SieveStatistics.forName("TestCJKSieveFilter.budget");
+		Analyzer a = getBudgetAnalyzer(CJKEmitType.NO_CJK, 2, 0, CJKSieveFilter.BudgetFallback.SCRIPTS_SO_FAR, stats);
+		assertAnalyzesTo(a, "latin first last マンガ katakana",
+			new String[] { "latin", "first", "last", "マンガ", "katakana" },
+			new int[] { 0, 6, 12, 17, 21 },  // startOffsets
+			new int[] { 5, 11, 16, 20, 29 },  // endOffsets
+			new int[] { 1, 1, 1, 1, 1 });  // positionIncrements
+		// the rest of a suppressed value is consumed, so the final offset is its length
+		assertTokenStreamContents(a.tokenStream("dummy", new StringReader("マンガ first latin last")), new String[] {}, new int[] {}, new int[] {}, 20);
+		// within budget
+		assertAnalyzesTo(a, "マンガ", new String[] {});
+		assertEquals(3, stats.getValues());
+		assertEquals(1, stats.getValuesEmitted());
+		assertEquals(2, stats.getBudgetExceeded());
+		// every token of both values
+		assertEquals(10, stats.getTokens());
+		assertEquals(5, stats.getTokensEmitted());
+
+		a = getBudgetAnalyzer(CJKEmitType.JAPANESE, 2, 0, CJKSieveFilter.BudgetFallback.EMIT, null);
+		assertAnalyzesTo(a, "no japanese in this value", new String[] { "no", "japanese", "in", "this", "value" });
+		assertAnalyzesTo(a, "no japanese", new String[] {});
+		a = getBudgetAnalyzer(CJKEmitType.JAPANESE, 2, 0, CJKSieveFilter.BudgetFallback.SUPPRESS, null);
+		assertTokenStreamContents(a.tokenStream("dummy", new StringReader("latin first マンガ katakana")), new String[] {}, new int[] {}, new int[] {}, 24);
+		assertAnalyzesTo(a, "マンガ", new String[] { "マンガ" });
+	}
+
+@Test
+	public void testBudgetMaxMillis() throws Exception
+	{
+		Analyzer a = new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				// a slow tokenizer
+				TokenStream slow = new TokenFilter(t)
+				{
+					@Override
+					public boolean incrementToken() throws IOException
+					{
+						try
+						{
+							Thread.sleep(20);
+						}
+						catch (InterruptedException e)
+						{
+							Thread.currentThread().interrupt();
+						}
+						return input.incrementToken();
+					}
+				};
+				CJKSieveFilter sieve = new CJKSieveFilter(slow, CJKEmitType.HANGUL);
+				sieve.setBudget(0, 10, CJKSieveFilter.BudgetFallback.SCRIPTS_SO_FAR);
+				return new TokenStreamComponents(t, sieve);
+			}
+		};
+		assertAnalyzesToReuse(a, "한국경제 hangul", new String[] { "한국경제", "hangul" });
+		assertTokenStreamContents(a.reusableTokenStream("dummy", new StringReader("hangul 한국경제")), new String[] {});
+	}
+
+@Test
+	public void testBudgetRandomStrings() throws Exception
+	{
+		checkRandomData(random, getBudgetAnalyzer(CJKEmitType.ANY_CJK, 5, 0, CJKSieveFilter.BudgetFallback.EMIT, null), 1000 * RANDOM_MULTIPLIER);
+		checkRandomData(random, getBudgetAnalyzer(CJKEmitType.ANY_CJK, 5, 0, CJKSieveFilter.BudgetFallback.SUPPRESS, null), 1000 * RANDOM_MULTIPLIER);
+		checkRandomData(random, getBudgetAnalyzer(CJKEmitType.HANGUL, 3, 0, CJKSieveFilter.BudgetFallback.SCRIPTS_SO_FAR, null), 1000 * RANDOM_MULTIPLIER);
+	}
+
+@Test
+	public void testShadowRules() throws Exception
+	{
+		final SieveStatistics stats = SieveStatistics.forName("TestCJKSieveFilter.shadow");
+		final CJKSieveRules rules = new CJKSieveRules(CJKEmitType.JAPANESE, CJKEmitType.CJ, CJKEmitType.HAN_SOLO);
+		Analyzer a = new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				return new TokenStreamComponents(t, new CJKSieveFilter(t, new CJKSieveRules.Source()
+				{
+					public CJKSieveRules getRules()
+					{
+						return rules;
+					}
+				}, stats));
+			}
+		};
+		// shadows don't change the output
+		assertAnalyzesToReuse(a, "日本マンガ", new String[] { "日", "本", "マンガ" });
+		assertAnalyzesToReuse(a, "日本 han", new String[] {});
+		assertAnalyzesToReuse(a, "latin", new String[] {});
+
+		assertEquals(3, stats.getShadowValues(CJKEmitType.CJ));
+		assertEquals(2, stats.getShadowAgreements(CJKEmitType.CJ));
+		assertEquals(2, stats.getShadowValuesEmitted(CJKEmitType.CJ));
+		assertEquals(6, stats.getShadowTokensEmitted(CJKEmitType.CJ));
+		assertEquals(3, stats.getShadowActualTokensEmitted(CJKEmitType.CJ));
+
+		assertEquals(3, stats.getShadowValues(CJKEmitType.HAN_SOLO));
+		assertEquals(1, stats.getShadowAgreements(CJKEmitType.HAN_SOLO));
+		assertEquals(1, stats.getShadowValuesEmitted(CJKEmitType.HAN_SOLO));
+		assertEquals(3, stats.getShadowTokensEmitted(CJKEmitType.HAN_SOLO));
+
+		assertEquals(0, stats.getShadowValues(CJKEmitType.ANY_CJK));
+	}
+
+@Test
+	public void testReplayable() throws Exception
+	{
+		Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("日本マンガ guide"));
+		CountingFilter counter = new CountingFilter(t);
+		CJKSieveFilter sieve = new CJKSieveFilter(counter, CJKEmitType.JAPANESE);
+		sieve.setReplayable(true);
+		for (int i = 0; i < 3; i++)
+		{
+			if (i > 0)
+				sieve.replay();
+			assertTokenStreamContents(sieve,
+				new String[] { "日", "本", "マンガ", "guide" },
+				new int[] { 0, 1, 2, 6 },  // startOffsets
+				new int[] { 1, 2, 5, 11 },  // endOffsets
+				11);  // final offset
+		}
+		assertEquals(4, counter.tokens);
+
+		// a new value after release
+		t.reset(new StringReader("한국경제 hangul"));
+		sieve.release();
+		for (int i = 0; i < 2; i++)
+		{
+			if (i > 0)
+				sieve.replay();
+			assertTokenStreamContents(sieve, new String[] {}, new int[] {}, new int[] {}, 11);
+		}
+		assertEquals(6, counter.tokens);
+	}
+
+@Test
+	public void testReplayableNotReplayedWithoutReplay() throws Exception
+	{
+		Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("日本マンガ guide"));
+		CountingFilter counter = new CountingFilter(t);
+		CJKSieveFilter sieve = new CJKSieveFilter(counter, CJKEmitType.JAPANESE);
+		sieve.setReplayable(true);
+		assertTokenStreamContents(sieve, new String[] { "日", "本", "マンガ", "guide" }, null, null, 11);
+
+		// reused for a new value without release():  the new value is analyzed
+		t.reset(new StringReader("マンガ"));
+		assertTokenStreamContents(sieve, new String[] { "マンガ" }, new int[] { 0 }, new int[] { 3 }, 3);
+		assertEquals(5, counter.tokens);
+		sieve.replay();
+		assertTokenStreamContents(sieve, new String[] { "マンガ" }, new int[] { 0 }, new int[] { 3 }, 3);
+		assertEquals(5, counter.tokens);
+	}
+
+@Test
+	public void testReplayNeedsResult() throws Exception
+	{
+		// nothing consumed yet
+		CJKSieveFilter sieve = new CJKSieveFilter(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("日本マンガ")), CJKEmitType.JAPANESE);
+		sieve.setReplayable(true);
+		assertReplayRefused(sieve);
+
+		// over the budget, the rest of the value isn't buffered until it's consumed
+		sieve = new CJKSieveFilter(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("latin first last マンガ")), CJKEmitType.NO_CJK);
+		sieve.setBudget(1, 0, CJKSieveFilter.BudgetFallback.EMIT);
+		sieve.setReplayable(true);
+		sieve.reset();
+		assertTrue(sieve.incrementToken());
+		assertReplayRefused(sieve);
+
+		// not replayable
+		sieve = new CJKSieveFilter(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("日本マンガ")), CJKEmitType.JAPANESE);
+		assertTokenStreamContents(sieve, new String[] { "日", "本", "マンガ" });
+		assertReplayRefused(sieve);
+	}
+
+	private void assertReplayRefused(CJKSieveFilter sieve)
+	{
+		try
+		{
+			sieve.replay();
+			fail("replay() accepted without a complete result");
+		}
+		catch (IllegalStateException e)
+		{
+			// expected
+		}
+	}
+
+@Test
+	public void testReplayableOverBudget() throws Exception
+	{
+		Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("latin first last マンガ katakana"));
+		CountingFilter counter = new CountingFilter(t);
+		CJKSieveFilter sieve = new CJKSieveFilter(counter, CJKEmitType.NO_CJK);
+		sieve.setBudget(2, 0, CJKSieveFilter.BudgetFallback.EMIT);
+		sieve.setReplayable(true);
+		for (int i = 0; i < 2; i++)
+		{
+			if (i > 0)
+				sieve.replay();
+			assertTokenStreamContents(sieve, new String[] { "latin", "first", "last", "マンガ", "katakana" }, null, null, 29);
+		}
+		assertEquals(5, counter.tokens);
+	}
+
+	/**
+	 * @return Analyzer of a StandardTokenizer followed by CJKSieveFilter with a budget
+	 */
+	private Analyzer getBudgetAnalyzer(final CJKEmitType emitType, final int maxTokens, final long maxMillis,
+			final CJKSieveFilter.BudgetFallback fallback, final SieveStatistics stats)
+	{
+		final CJKSieveRules rules = new CJKSieveRules(emitType);
+		return new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				CJKSieveFilter sieve = new CJKSieveFilter(t, new CJKSieveRules.Source()
+				{
+					public CJKSieveRules getRules()
+					{
+						return rules;
+					}
+				}, stats);
+				sieve.setBudget(maxTokens, maxMillis, fallback);
+				return new TokenStreamComponents(t, sieve);
+			}
+		};
+	}
+
 	/**
 	 * @return Analyzer of a StandardTokenizer followed by CJKSieveFilter
 	 */
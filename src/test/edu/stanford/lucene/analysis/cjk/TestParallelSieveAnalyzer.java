@@ -0,0 +1,221 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.analysis.*;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.*;
+import org.junit.*;
+
+/**
+ * Tests for ParallelSieveAnalyzer
+ */
+public class TestParallelSieveAnalyzer extends BaseTokenStreamTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+	private ExecutorService executor;
+
+	@Override
+	public void setUp() throws Exception
+	{
+		super.setUp();
+		executor = Executors.newFixedThreadPool(3);
+	}
+
+	@Override
+	public void tearDown() throws Exception
+	{
+		executor.shutdown();
+		super.tearDown();
+	}
+
+@Test
+	public void testSameAsSerial() throws Exception
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 50; i++)
+			sb.append("日本マンガを知るためのブック・ガイド。 Manga guide ").append(i).append(' ');
+		String text = sb.toString();
+
+		for (CJKEmitType emitType : CJKEmitType.values())
+		{
+			Analyzer parallel = new ParallelSieveAnalyzer(getStdTokenAnalyzer(), emitType, executor, 40);
+			assertSameTokens(getStdTokenSieveAnalyzer(emitType), parallel, text);
+		}
+	}
+
+@Test
+	public void testScriptsCombinedAcrossChunks() throws Exception
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++)
+			sb.append("latin words only ");
+		sb.append("한국경제");
+		String text = sb.toString();
+
+		Analyzer hangul = new ParallelSieveAnalyzer(getStdTokenAnalyzer(), CJKEmitType.HANGUL, executor, 64);
+		List<String> terms = terms(hangul, text);
+		assertEquals(301, terms.size());
+		assertEquals("latin", terms.get(0));
+		assertEquals("한국경제", terms.get(300));
+		assertSameTokens(getStdTokenSieveAnalyzer(CJKEmitType.HANGUL), hangul, text);
+
+		Analyzer noCJK = new ParallelSieveAnalyzer(getStdTokenAnalyzer(), CJKEmitType.NO_CJK, executor, 64);
+		assertTokenStreamContents(noCJK.tokenStream("dummy", new StringReader(text)), new String[] {}, new int[] {}, new int[] {}, text.length());
+	}
+
+@Test
+	public void testSmallValueNotChunked() throws Exception
+	{
+		Analyzer a = new ParallelSieveAnalyzer(getStdTokenAnalyzer(), CJKEmitType.HANGUL, executor, 1024);
+		assertAnalyzesTo(a, "한국경제 hangul",
+			new String[] { "한국경제", "hangul" },
+			new int[] { 0, 5 },
+			new int[] { 4, 11 },
+			new String[] { "<HANGUL>", "<ALPHANUM>" },
+			new int[] { 1, 1 });
+		assertAnalyzesTo(a, "", new String[] {});
+	}
+
+@Test
+	public void testChunkBoundaries() throws Exception
+	{
+		// split after whitespace at or past the chunk size
+		ParallelSieveAnalyzer a = new ParallelSieveAnalyzer(getStdTokenAnalyzer(), CJKEmitType.ANY_CJK, executor, 8);
+		assertArrayEquals(new int[] { 0, 9, 18, 20 }, a.chunkBoundaries("aaaaaaaa bbbbbbbb cc"));
+		// split after a sentence end
+		a = new ParallelSieveAnalyzer(getStdTokenAnalyzer(), CJKEmitType.ANY_CJK, executor, 4);
+		assertArrayEquals(new int[] { 0, 5, 7 }, a.chunkBoundaries("日本日本。日本"));
+		// no boundary nearby:  split at the chunk size, but not within a surrogate pair
+		String supplementary = new StringBuilder("日本日").appendCodePoint(0x20000).append("日本日本日").toString();
+		assertArrayEquals(new int[] { 0, 3, 7, 10 }, a.chunkBoundaries(supplementary));
+		// smallest chunks still make progress past a surrogate pair
+		a = new ParallelSieveAnalyzer(getStdTokenAnalyzer(), CJKEmitType.ANY_CJK, executor, 2);
+		supplementary = new StringBuilder("日").appendCodePoint(0x20000).append("日").toString();
+		assertArrayEquals(new int[] { 0, 1, 3, 4 }, a.chunkBoundaries(supplementary));
+	}
+
+@Test
+	public void testChunkSizeTooSmall() throws Exception
+	{
+		try
+		{
+			new ParallelSieveAnalyzer(getStdTokenAnalyzer(), CJKEmitType.ANY_CJK, executor, 1);
+			fail("chunkSize 1 can't hold a surrogate pair");
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertTrue(e.getMessage().contains("at least 2"));
+		}
+	}
+
+@Test
+	public void testRandomStrings() throws Exception
+	{
+		checkRandomData(random, new ParallelSieveAnalyzer(getStdTokenAnalyzer(), CJKEmitType.HAN_SOLO, executor, 64), 200 * RANDOM_MULTIPLIER, 1024);
+	}
+
+	private void assertSameTokens(Analyzer expected, Analyzer actual, String text) throws IOException
+	{
+		List<String> expectedTokens = tokens(expected, text);
+		assertEquals(expectedTokens, tokens(actual, text));
+	}
+
+	/**
+	 * @return term, offsets, type and position increment of each token, and the final offset
+	 */
+	private List<String> tokens(Analyzer a, String text) throws IOException
+	{
+		List<String> result = new ArrayList<String>();
+		TokenStream ts = a.tokenStream("dummy", new StringReader(text));
+		CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+		OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+		TypeAttribute typeAtt = ts.addAttribute(TypeAttribute.class);
+		PositionIncrementAttribute posIncAtt = ts.addAttribute(PositionIncrementAttribute.class);
+		ts.reset();
+		while (ts.incrementToken())
+			result.add(termAtt + " " + offsetAtt.startOffset() + "-" + offsetAtt.endOffset() + " " + typeAtt.type() + " " + posIncAtt.getPositionIncrement());
+		ts.end();
+		result.add("end " + offsetAtt.endOffset());
+		ts.close();
+		return result;
+	}
+
+	private List<String> terms(Analyzer a, String text) throws IOException
+	{
+		List<String> result = new ArrayList<String>();
+		TokenStream ts = a.tokenStream("dummy", new StringReader(text));
+		CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+		ts.reset();
+		while (ts.incrementToken())
+			result.add(termAtt.toString());
+		ts.end();
+		ts.close();
+		return result;
+	}
+
+	/**
+	 * @return Analyzer of a StandardTokenizer
+	 */
+	private Analyzer getStdTokenAnalyzer()
+	{
+		return new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				return new TokenStreamComponents(new StandardTokenizer(TEST_VERSION_CURRENT, reader));
+			}
+		};
+	}
+
+	/**
+	 * @return Analyzer of a StandardTokenizer followed by CJKSieveFilter
+	 */
+	private Analyzer getStdTokenSieveAnalyzer(final CJKEmitType emitType)
+	{
+		return new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				return new TokenStreamComponents(t, new CJKSieveFilter(t, emitType));
+			}
+		};
+	}
+}
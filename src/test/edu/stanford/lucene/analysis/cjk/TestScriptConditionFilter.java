@@ -0,0 +1,158 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.*;
+
+import org.apache.lucene.analysis.*;
+import org.apache.lucene.analysis.cjk.CJKBigramFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.junit.*;
+
+/**
+ * Tests for ScriptConditionFilter
+ */
+public class TestScriptConditionFilter extends BaseTokenStreamTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+@Test
+	public void testOnlyMatchingTokensFiltered() throws Exception
+	{
+		Analyzer a = getAnalyzer(CJKEmitType.ANY_CJK, MARK);
+		assertAnalyzesTo(a, "Manga マンガ 한국 test 日本",
+			new String[] { "Manga", "マンガ*", "한국*", "test", "日*", "本*" },
+			new int[] { 0, 6, 10, 13, 18, 19 },  // startOffsets
+			new int[] { 5, 9, 12, 17, 19, 20 },  // endOffsets
+			new int[] { 1, 1, 1, 1, 1, 1 });  // positionIncrements
+		assertAnalyzesTo(a, "no cjk here", new String[] { "no", "cjk", "here" });
+
+		a = getAnalyzer(CJKEmitType.NO_CJK, MARK);
+		assertAnalyzesTo(a, "Manga マンガ 한국 test", new String[] { "Manga*", "マンガ", "한국", "test*" });
+		a = getAnalyzer(CJKEmitType.HANGUL, MARK);
+		assertAnalyzesTo(a, "Manga マンガ 한국 test", new String[] { "Manga", "マンガ", "한국*", "test" });
+	}
+
+@Test
+	public void testBigramsWithinRuns() throws Exception
+	{
+		Analyzer a = getAnalyzer(CJKEmitType.ANY_CJK, BIGRAM);
+		// the Latin token ends the first run, so there is no bigram across it
+		assertAnalyzesTo(a, "日本語 test 日本 한국어",
+			new String[] { "日本", "本語", "test", "日本", "한국", "국어" },
+			new int[] { 0, 1, 4, 9, 12, 13 },  // startOffsets
+			new int[] { 2, 3, 8, 11, 14, 15 },  // endOffsets
+			new int[] { 1, 1, 1, 1, 1, 1 });  // positionIncrements
+		assertAnalyzesTo(a, "日 test 本", new String[] { "日", "test", "本" });
+		assertAnalyzesTo(a, "日本", new String[] { "日本" });
+		assertAnalyzesTo(a, "", new String[] {});
+	}
+
+@Test
+	public void testPositionIncrementsPreserved() throws Exception
+	{
+		Analyzer a = new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				TokenStream stop = new StopFilter(TEST_VERSION_CURRENT, t, StopAnalyzer.ENGLISH_STOP_WORDS_SET);
+				return new TokenStreamComponents(t, new ScriptConditionFilter(stop, CJKEmitType.ANY_CJK, MARK));
+			}
+		};
+		assertAnalyzesTo(a, "the 日本 of the test",
+			new String[] { "日*", "本*", "test" },
+			new int[] { 2, 1, 3 });  // positionIncrements
+	}
+
+@Test
+	public void testFinalOffset() throws Exception
+	{
+		assertTokenStreamContents(getAnalyzer(CJKEmitType.ANY_CJK, BIGRAM).tokenStream("dummy", new StringReader("日本 test  ")),
+			new String[] { "日本", "test" },
+			new int[] { 0, 3 },  // startOffsets
+			new int[] { 2, 7 },  // endOffsets
+			9);  // final offset
+	}
+
+@Test
+	public void testRandomStrings() throws Exception
+	{
+		checkRandomData(random, getAnalyzer(CJKEmitType.ANY_CJK, BIGRAM), 1000 * RANDOM_MULTIPLIER);
+		checkRandomData(random, getAnalyzer(CJKEmitType.NO_CJK, MARK), 1000 * RANDOM_MULTIPLIER);
+	}
+
+	/** appends '*' to each token it sees */
+	private static final ScriptConditionFilter.InnerChain MARK = new ScriptConditionFilter.InnerChain()
+	{
+		public TokenStream create(TokenStream matching)
+		{
+			return new TokenFilter(matching)
+			{
+				private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+
+				@Override
+				public boolean incrementToken() throws IOException
+				{
+					if (!input.incrementToken())
+						return false;
+					termAtt.append('*');
+					return true;
+				}
+			};
+		}
+	};
+
+	private static final ScriptConditionFilter.InnerChain BIGRAM = new ScriptConditionFilter.InnerChain()
+	{
+		public TokenStream create(TokenStream matching)
+		{
+			return new CJKBigramFilter(matching);
+		}
+	};
+
+	/**
+	 * @return Analyzer of a StandardTokenizer followed by ScriptConditionFilter
+	 */
+	private Analyzer getAnalyzer(final CJKEmitType condition, final ScriptConditionFilter.InnerChain innerChain)
+	{
+		return new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				return new TokenStreamComponents(t, new ScriptConditionFilter(t, condition, innerChain));
+			}
+		};
+	}
+}
@@ -0,0 +1,216 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.*;
+
+import org.apache.lucene.analysis.*;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.junit.*;
+
+/**
+ * Tests for script hints:  ScriptHintAttribute and ScriptHintCharFilter
+ */
+public class TestScriptHints extends BaseTokenStreamTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+@Test
+	public void testAttributeHintTrusted() throws Exception
+	{
+		// the hint says Hangul, whatever the tokens say
+		Tokenizer tokenizer = new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("no hangul here"));
+		TokenStream stream = new CJKSieveFilter(tokenizer, CJKEmitType.HANGUL);
+		stream.addAttribute(ScriptHintAttribute.class).setScriptMask(CJKScriptClassifier.HANGUL);
+		assertTokenStreamContents(stream, new String[] { "no", "hangul", "here" });
+
+		// the hint only applies to one value
+		tokenizer.reset(new StringReader("no hangul here"));
+		assertTokenStreamContents(stream, new String[] {});
+
+		tokenizer.reset(new StringReader("한국경제 hangul"));
+		stream.getAttribute(ScriptHintAttribute.class).setScriptMask(0);
+		assertTokenStreamContents(stream, new String[] {});
+	}
+
+@Test
+	public void testHintedValueNotBuffered() throws Exception
+	{
+		Tokenizer tokenizer = new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("한국경제 hangul only"));
+		CountingFilter counter = new CountingFilter(tokenizer);
+		TokenStream stream = new CJKSieveFilter(counter, CJKEmitType.HANGUL);
+		stream.addAttribute(ScriptHintAttribute.class).setScriptMask(CJKScriptClassifier.HANGUL);
+		stream.reset();
+		assertTrue(stream.incrementToken());
+		assertEquals(1, counter.tokens);
+		assertTrue(stream.incrementToken());
+		assertEquals(2, counter.tokens);
+	}
+
+@Test
+	public void testHintedValueReplayed() throws Exception
+	{
+		Tokenizer tokenizer = new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("romanized korean"));
+		CountingFilter counter = new CountingFilter(tokenizer);
+		CJKSieveFilter sieve = new CJKSieveFilter(counter, CJKEmitType.HANGUL);
+		sieve.setReplayable(true);
+		sieve.addAttribute(ScriptHintAttribute.class).setScriptMask(CJKScriptClassifier.HANGUL);
+		for (int i = 0; i < 2; i++)
+		{
+			if (i > 0)
+				sieve.replay();
+			assertTokenStreamContents(sieve, new String[] { "romanized", "korean" }, new int[] { 0, 10 }, new int[] { 9, 16 }, 16);
+		}
+		assertEquals(2, counter.tokens);
+	}
+
+@Test
+	public void testCharFilterHint() throws Exception
+	{
+		Analyzer a = getHintAnalyzer(CJKEmitType.JAPANESE);
+		assertAnalyzesTo(a, "[[sieve:jpn]]Tokyo story",
+			new String[] { "Tokyo", "story" },
+			new int[] { 13, 19 },  // startOffsets include the marker
+			new int[] { 18, 24 }); // endOffsets
+		assertAnalyzesTo(a, "[[sieve:kor]]マンガ", new String[] {});
+		// no marker:  scan as usual
+		assertAnalyzesTo(a, "マンガ is katakana", new String[] { "マンガ", "is", "katakana" });
+		assertAnalyzesTo(a, "Tokyo story", new String[] {});
+		// invalid marker is left in place
+		assertAnalyzesTo(a, "[[sieve:xyz]]マンガ", new String[] { "sieve:xyz", "マンガ" });
+
+		Analyzer noCJK = getHintAnalyzer(CJKEmitType.NO_CJK);
+		assertAnalyzesTo(noCJK, "[[sieve:none]]壇君 in a romanized record", new String[] { "壇", "君", "in", "a", "romanized", "record" });
+		assertAnalyzesTo(noCJK, "[[sieve:han, hangul]]", new String[] {});
+	}
+
+@Test
+	public void testCharFilterHintIgnoredUnlessHonored() throws Exception
+	{
+		ScriptHintChannel hintChannel = new ScriptHintChannel();
+		assertAnalyzesTo(getHintAnalyzer(CJKEmitType.HANGUL, hintChannel, null), "[[sieve:kor]]no hangul", new String[] {});
+		// nothing is left for the next sieve on the channel
+		Analyzer hinted = getHintAnalyzer(CJKEmitType.HANGUL, null, hintChannel);
+		assertAnalyzesTo(hinted, "no hangul", new String[] {});
+	}
+
+@Test
+	public void testUnhintedFieldAfterHintedField() throws Exception
+	{
+		// a hinted field, then a field whose chain has the char filter but a
+		// sieve without hints, then one with no char filter at all
+		ScriptHintChannel hintChannel = new ScriptHintChannel();
+		Analyzer hinted = getHintAnalyzer(CJKEmitType.HANGUL, hintChannel, hintChannel);
+		Analyzer unhinted = getHintAnalyzer(CJKEmitType.HANGUL, hintChannel, null);
+		Analyzer plain = getHintAnalyzer(CJKEmitType.HANGUL, null, null);
+		assertAnalyzesTo(hinted, "[[sieve:kor]]romanized korean", new String[] { "romanized", "korean" });
+		assertAnalyzesTo(unhinted, "[[sieve:kor]]romanized korean", new String[] {});
+		assertAnalyzesTo(plain, "romanized korean", new String[] {});
+		assertAnalyzesTo(hinted, "romanized korean", new String[] {});
+
+		// the char filter of another chain doesn't reach this one
+		assertAnalyzesTo(getHintAnalyzer(CJKEmitType.HANGUL, new ScriptHintChannel(), null), "[[sieve:kor]]no hangul", new String[] {});
+		assertAnalyzesTo(hinted, "no hangul", new String[] {});
+	}
+
+@Test
+	public void testCharFilterHintOnAnotherThread() throws Exception
+	{
+		final ScriptHintChannel hintChannel = new ScriptHintChannel();
+		Thread t = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					new ScriptHintCharFilter(CharReader.get(new StringReader("[[sieve:kor]]elsewhere")), hintChannel);
+				}
+				catch (IOException e)
+				{
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		t.start();
+		t.join();
+		assertAnalyzesTo(getHintAnalyzer(CJKEmitType.HANGUL, null, hintChannel), "no hangul", new String[] {});
+	}
+
+@Test
+	public void testScriptMaskForHint()
+	{
+		assertEquals(CJKScriptClassifier.HANGUL, ScriptHintCharFilter.scriptMaskForHint("kor"));
+		assertEquals(CJKScriptClassifier.HAN | CJKScriptClassifier.HIRAGANA, ScriptHintCharFilter.scriptMaskForHint("jpn"));
+		assertEquals(CJKScriptClassifier.HAN | CJKScriptClassifier.KATAKANA, ScriptHintCharFilter.scriptMaskForHint("han,katakana"));
+		assertEquals(0, ScriptHintCharFilter.scriptMaskForHint("none"));
+		assertEquals(ScriptHintAttribute.NO_HINT, ScriptHintCharFilter.scriptMaskForHint("eng"));
+	}
+
+	private Analyzer getHintAnalyzer(CJKEmitType emitType)
+	{
+		ScriptHintChannel hintChannel = new ScriptHintChannel();
+		return getHintAnalyzer(emitType, hintChannel, hintChannel);
+	}
+
+	/**
+	 * @param charFilterChannel if not null, the chain starts with a ScriptHintCharFilter offering hints to it
+	 * @param sieveChannel if not null, the sieve takes hints from it
+	 */
+	private Analyzer getHintAnalyzer(final CJKEmitType emitType, final ScriptHintChannel charFilterChannel, final ScriptHintChannel sieveChannel)
+	{
+		return new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				CJKSieveFilter sieve = new CJKSieveFilter(t, emitType);
+				sieve.setCharFilterHints(sieveChannel);
+				return new TokenStreamComponents(t, sieve);
+			}
+
+			@Override
+			protected Reader initReader(Reader reader)
+			{
+				if (charFilterChannel == null)
+					return reader;
+				try
+				{
+					return new ScriptHintCharFilter(CharReader.get(reader), charFilterChannel);
+				}
+				catch (IOException e)
+				{
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+}
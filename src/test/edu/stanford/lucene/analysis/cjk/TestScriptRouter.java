@@ -0,0 +1,164 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.*;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.*;
+
+/**
+ * Tests for ScriptRouter
+ */
+public class TestScriptRouter extends BaseTokenStreamTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+	private static final CJKEmitType[] EMIT_TYPES = { CJKEmitType.HANGUL, CJKEmitType.JAPANESE, CJKEmitType.ANY_CJK };
+	private static final String[] KEYS = { "ko", "ja", "cjk" };
+
+@Test
+	public void testRoutes() throws Exception
+	{
+		ScriptRouter router = new ScriptRouter(EMIT_TYPES, KEYS, "latin");
+		assertEquals("ko", router.route("한국어"));
+		assertEquals("ja", router.route("日本のマンガ"));
+		assertEquals("cjk", router.route("中国"));
+		assertEquals("latin", router.route("latin only"));
+		assertEquals("latin", router.route());
+		// the first matching route wins
+		assertEquals("ko", router.route("日本のマンガ 한국어"));
+		assertEquals("cjk", new ScriptRouter(new CJKEmitType[] { CJKEmitType.ANY_CJK, CJKEmitType.HANGUL }, new String[] { "cjk", "ko" }, null).route("한국어"));
+	}
+
+@Test
+	public void testMultipleValues() throws Exception
+	{
+		ScriptRouter router = new ScriptRouter(EMIT_TYPES, KEYS, "latin");
+		assertEquals("ja", router.route("a title", null, "日本のマンガ"));
+		assertEquals("latin", router.route("a title", null, "an abstract"));
+	}
+
+@Test
+	public void testNoDefault() throws Exception
+	{
+		ScriptRouter router = new ScriptRouter(EMIT_TYPES, KEYS, null);
+		assertNull(router.route("latin only"));
+		assertEquals(3, router.getKeys().length);
+		assertEquals(4, new ScriptRouter(EMIT_TYPES, KEYS, "latin").getKeys().length);
+	}
+
+@Test
+	public void testMinChars() throws Exception
+	{
+		ScriptRouter router = new ScriptRouter(EMIT_TYPES, KEYS, "latin", 2);
+		assertEquals("latin", router.route("mostly latin 日 text"));
+		assertEquals("cjk", router.route("latin 日本"));
+		// counted over all the values
+		assertEquals("cjk", router.route("latin 日", "本"));
+		assertEquals("ko", router.route("日本語 한국"));
+		assertEquals("cjk", router.route("日本語 한"));
+		assertEquals("cjk", new ScriptRouter(EMIT_TYPES, KEYS, "latin").route("mostly latin 日 text"));
+	}
+
+	/**
+	 * route a synthetic corpus into an index per key, and check each index
+	 * has only the documents it should, in reasonable proportions
+	 */
+@Test
+	public void testRoutingToIndexes() throws Exception
+	{
+		ScriptRouter router = new ScriptRouter(EMIT_TYPES, KEYS, "latin", 2);
+		Map<String,RAMDirectory> dirs = new HashMap<String,RAMDirectory>();
+		Map<String,IndexWriter> writers = new HashMap<String,IndexWriter>();
+		for (String key : router.getKeys())
+		{
+			dirs.put(key, new RAMDirectory());
+			writers.put(key, new IndexWriter(dirs.get(key), new IndexWriterConfig(TEST_VERSION_CURRENT, new WhitespaceAnalyzer(TEST_VERSION_CURRENT))));
+		}
+
+		SyntheticCJKCorpus corpus = new SyntheticCJKCorpus(random.nextLong());
+		corpus.setLengths(4, 40, 500);
+		int numDocs = 600 * RANDOM_MULTIPLIER;
+		for (int i = 0; i < numDocs; i++)
+		{
+			String title = corpus.next();
+			SyntheticCJKCorpus.Mix mix = corpus.getLastMix();
+			String key = router.route(title);
+			switch (mix)
+			{
+				case LATIN:
+				case NOISE:
+					assertEquals(title, "latin", key);
+					break;
+				case HAN:
+					assertEquals(title, "cjk", key);
+					break;
+				case HANGUL:
+					assertEquals(title, "ko", key);
+					break;
+				case JAPANESE:
+					// unless truncation left only kanji
+					assertTrue(title, key.equals("ja") || key.equals("cjk"));
+					break;
+			}
+			Document doc = new Document();
+			doc.add(new Field("id", Integer.toString(i), Field.Store.YES, Field.Index.NOT_ANALYZED));
+			doc.add(new Field("title", title, Field.Store.YES, Field.Index.ANALYZED));
+			writers.get(key).addDocument(doc);
+		}
+
+		int total = 0;
+		for (String key : router.getKeys())
+		{
+			writers.get(key).close();
+			IndexReader reader = IndexReader.open(dirs.get(key));
+			int n = reader.numDocs();
+			total += n;
+			// each mix has a sixth of the corpus;  latin gets two of them, and some mixed
+			assertTrue(key + " has " + n + " of " + numDocs, n > numDocs / 20 && n < numDocs / 2);
+			for (int i = 0; i < n; i++)
+			{
+				String title = reader.document(i).get("title");
+				assertEquals(title, key, router.route(title));
+			}
+			reader.close();
+			dirs.get(key).close();
+		}
+		assertEquals(numDocs, total);
+	}
+}
@@ -0,0 +1,250 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.*;
+
+import org.apache.lucene.analysis.*;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.*;
+import org.apache.lucene.util._TestUtil;
+import org.junit.*;
+
+import com.ibm.icu.lang.UScript;
+
+/**
+ * Tests for ScriptSieveFilter, ScriptSieveRule and ScriptSet
+ */
+public class TestScriptSieveFilter extends BaseTokenStreamTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+@Test
+	public void testAnyOf() throws Exception
+	{
+		Analyzer a = getAnalyzer(new ScriptSieveRule(ScriptSet.forNames("Thai"), ScriptSet.EMPTY));
+		assertAnalyzesTo(a, "ภาษาไทย thai",
+			new String[] { "ภาษาไทย", "thai" },
+			new int[] { 0, 8 },  // startOffsets
+			new int[] { 7, 12 },  // endOffsets
+			new int[] { 1, 1 });  // positionIncrements
+		assertAnalyzesTo(a, "no thai here", new String[] {});
+		assertAnalyzesTo(a, "日本語", new String[] {});
+		assertAnalyzesTo(a, "", new String[] {});
+	}
+
+@Test
+	public void testNoneOf() throws Exception
+	{
+		Analyzer a = getAnalyzer(new ScriptSieveRule(ScriptSet.EMPTY, ScriptSet.forNames("Cyrillic")));
+		assertAnalyzesTo(a, "latin 日本 123", new String[] { "latin", "日", "本", "123" });
+		assertAnalyzesTo(a, "latin русский", new String[] {});
+	}
+
+@Test
+	public void testAnyOfAndNoneOf() throws Exception
+	{
+		Analyzer a = getAnalyzer(new ScriptSieveRule(ScriptSet.forNames("Latin"), ScriptSet.forNames("Greek", "Cyrl")));
+		assertAnalyzesTo(a, "latin 123", new String[] { "latin", "123" });
+		assertAnalyzesTo(a, "123", new String[] {});
+		assertAnalyzesTo(a, "latin ελληνικά", new String[] {});
+		assertAnalyzesTo(a, "русский latin", new String[] {});
+	}
+
+	/**
+	 * once a noneOf script is seen, the tokens aren't kept;  once an anyOf
+	 * script is seen with no noneOf scripts, the tokens are emitted right away
+	 */
+@Test
+	public void testEarlyDecision() throws Exception
+	{
+		Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("one two ภาษา three four"));
+		CountingFilter counter = new CountingFilter(t);
+		TokenStream ts = new ScriptSieveFilter(counter, new ScriptSieveRule(ScriptSet.of(UScript.THAI), ScriptSet.EMPTY));
+		CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+		ts.reset();
+		assertTrue(ts.incrementToken());
+		assertEquals("one", termAtt.toString());
+		assertEquals(3, counter.tokens);
+		assertTrue(ts.incrementToken());
+		assertTrue(ts.incrementToken());
+		assertTrue(ts.incrementToken());
+		assertEquals("three", termAtt.toString());
+		assertEquals(4, counter.tokens);
+		assertTrue(ts.incrementToken());
+		assertFalse(ts.incrementToken());
+		ts.end();
+		ts.close();
+
+		// the rest of a rejected value is still consumed, so end() has the final offset
+		t = new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("one два three"));
+		counter = new CountingFilter(t);
+		ts = new ScriptSieveFilter(counter, new ScriptSieveRule(ScriptSet.EMPTY, ScriptSet.of(UScript.CYRILLIC)));
+		assertTokenStreamContents(ts, new String[] {}, new int[] {}, new int[] {}, 13);
+		assertEquals(3, counter.tokens);
+	}
+
+@Test
+	public void testStats() throws Exception
+	{
+		SieveStatistics stats = SieveStatistics.forName("TestScriptSieveFilter.stats");
+		Analyzer a = getAnalyzer(new ScriptSieveRule(ScriptSet.forNames("Thai"), ScriptSet.EMPTY), stats);
+		assertAnalyzesToReuse(a, "one ภาษา two", new String[] { "one", "ภาษา", "two" });
+		assertAnalyzesToReuse(a, "one two", new String[] {});
+		assertEquals(2, stats.getValues());
+		assertEquals(1, stats.getValuesEmitted());
+		assertEquals(5, stats.getTokens());
+		assertEquals(3, stats.getTokensEmitted());
+	}
+
+	/**
+	 * StandardTokenizer's CJK types decide a token's script, as in CJKSieveFilter
+	 */
+@Test
+	public void testTokenType() throws Exception
+	{
+		// U+3033 is Common script, but StandardTokenizer types it <KATAKANA>
+		Analyzer a = getAnalyzer(ScriptSieveRule.forEmitType(CJKEmitType.JAPANESE));
+		assertAnalyzesTo(a, "\u3033 latin", new String[] { "\u3033", "latin" }, new String[] { "<KATAKANA>", "<ALPHANUM>" });
+		assertAnalyzesTo(getCJKAnalyzer(CJKEmitType.JAPANESE), "\u3033 latin", new String[] { "\u3033", "latin" });
+	}
+
+	/**
+	 * the rule for each CJKEmitType gives the same tokens as CJKSieveFilter
+	 */
+@Test
+	public void testSameAsCJKSieveFilter() throws Exception
+	{
+		SyntheticCJKCorpus corpus = new SyntheticCJKCorpus(random.nextLong());
+		corpus.setLengths(1, 40, 500);
+		for (CJKEmitType emitType : CJKEmitType.values())
+		{
+			Analyzer script = getAnalyzer(ScriptSieveRule.forEmitType(emitType));
+			Analyzer cjk = getCJKAnalyzer(emitType);
+			for (int i = 0; i < 100 * RANDOM_MULTIPLIER; i++)
+			{
+				String text = corpus.next();
+				assertEquals(text, tokens(cjk, text), tokens(script, text));
+				text = _TestUtil.randomRealisticUnicodeString(random, 50);
+				assertEquals(text, tokens(cjk, text), tokens(script, text));
+			}
+		}
+	}
+
+@Test
+	public void testScriptSet() throws Exception
+	{
+		ScriptSet set = ScriptSet.forNames("Thai", "Latn", "Hangul");
+		assertTrue(set.contains(UScript.THAI));
+		assertTrue(set.contains(UScript.LATIN));
+		assertTrue(set.contains(UScript.HANGUL));
+		assertFalse(set.contains(UScript.HAN));
+		assertEquals(set, ScriptSet.of(UScript.HANGUL, UScript.THAI, UScript.LATIN));
+		assertEquals(set.hashCode(), ScriptSet.of(UScript.HANGUL, UScript.THAI, UScript.LATIN).hashCode());
+		assertEquals(3, set.getCodes().length);
+		assertTrue(ScriptSet.of().isEmpty());
+		assertEquals(ScriptSet.EMPTY, ScriptSet.forNames());
+		try
+		{
+			ScriptSet.forNames("Klingon");
+			fail("unknown script name accepted");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+
+@Test
+	public void testRandomStrings() throws Exception
+	{
+		checkRandomData(random, getAnalyzer(ScriptSieveRule.forEmitType(CJKEmitType.ANY_CJK)), 1000 * RANDOM_MULTIPLIER);
+		checkRandomData(random, getAnalyzer(new ScriptSieveRule(ScriptSet.EMPTY, ScriptSet.forNames("Cyrillic", "Arabic"))), 1000 * RANDOM_MULTIPLIER);
+		checkRandomData(random, getAnalyzer(new ScriptSieveRule(ScriptSet.forNames("Latin"), ScriptSet.EMPTY)), 1000 * RANDOM_MULTIPLIER);
+	}
+
+	/**
+	 * @return term, offsets, type and position increment of each token, and the final offset
+	 */
+	private static String tokens(Analyzer a, String text) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		TokenStream ts = a.reusableTokenStream("dummy", new StringReader(text));
+		CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+		OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+		TypeAttribute typeAtt = ts.addAttribute(TypeAttribute.class);
+		PositionIncrementAttribute posIncAtt = ts.addAttribute(PositionIncrementAttribute.class);
+		ts.reset();
+		while (ts.incrementToken())
+			sb.append(termAtt).append('/').append(offsetAtt.startOffset()).append('-').append(offsetAtt.endOffset())
+				.append('/').append(typeAtt.type()).append('/').append(posIncAtt.getPositionIncrement()).append(' ');
+		ts.end();
+		sb.append(offsetAtt.endOffset());
+		ts.close();
+		return sb.toString();
+	}
+
+	private Analyzer getAnalyzer(ScriptSieveRule rule)
+	{
+		return getAnalyzer(rule, null);
+	}
+
+	/**
+	 * @return Analyzer of a StandardTokenizer followed by ScriptSieveFilter
+	 */
+	private Analyzer getAnalyzer(final ScriptSieveRule rule, final SieveStatistics stats)
+	{
+		return new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				return new TokenStreamComponents(t, new ScriptSieveFilter(t, rule, stats));
+			}
+		};
+	}
+
+	/**
+	 * @return Analyzer of a StandardTokenizer followed by CJKSieveFilter
+	 */
+	private Analyzer getCJKAnalyzer(final CJKEmitType emitType)
+	{
+		return new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				return new TokenStreamComponents(t, new CJKSieveFilter(t, emitType));
+			}
+		};
+	}
+}
@@ -0,0 +1,244 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.lucene.analysis.*;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.junit.*;
+
+import edu.stanford.lucene.analysis.cjk.SyntheticCJKCorpus.Mix;
+
+/**
+ * Tests for SyntheticCJKCorpus, and a multi-threaded stress test of
+ * CJKSieveFilter using it
+ */
+public class TestSyntheticCJKCorpus extends BaseTokenStreamTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+@Test
+	public void testSameSeedSameCorpus() throws Exception
+	{
+		SyntheticCJKCorpus c1 = new SyntheticCJKCorpus(42);
+		c1.setRepeatRate(0.2);
+		StringWriter out = new StringWriter();
+		c1.write(out, 200);
+
+		SyntheticCJKCorpus c2 = new SyntheticCJKCorpus(42);
+		c2.setRepeatRate(0.2);
+		StringBuilder expected = new StringBuilder();
+		for (String value : c2.next(200))
+			expected.append(value).append('\n');
+		assertEquals(expected.toString(), out.toString());
+
+		assertFalse(new SyntheticCJKCorpus(43).next(20).equals(new SyntheticCJKCorpus(42).next(20)));
+	}
+
+@Test
+	public void testMixScripts() throws Exception
+	{
+		assertMixMasks(Mix.LATIN, 0, 0);
+		assertMixMasks(Mix.HAN, CJKScriptClassifier.HAN, CJKScriptClassifier.HAN);
+		assertMixMasks(Mix.HANGUL, CJKScriptClassifier.HANGUL, CJKScriptClassifier.HANGUL);
+		assertMixMasks(Mix.JAPANESE, CJKScriptClassifier.HIRAGANA,
+				CJKScriptClassifier.HAN | CJKScriptClassifier.HIRAGANA | CJKScriptClassifier.KATAKANA);
+
+		SyntheticCJKCorpus corpus = new SyntheticCJKCorpus(random.nextLong());
+		corpus.setOnly(Mix.NOISE);
+		for (String value : corpus.next(200))
+		{
+			int cjk = 0;
+			for (int i = 0; i < value.length(); i++)
+				if (CJKScriptClassifier.scriptBit(value.charAt(i)) != 0)
+					cjk++;
+			assertEquals(value, 1, cjk);
+		}
+	}
+
+@Test
+	public void testWeightsAndLengths() throws Exception
+	{
+		SyntheticCJKCorpus corpus = new SyntheticCJKCorpus(random.nextLong());
+		corpus.setOnly(Mix.HANGUL);
+		corpus.setWeight(Mix.LATIN, 3.0);
+		corpus.setLengths(10, 50, 200);
+		int latin = 0;
+		long totalLength = 0;
+		for (int i = 0; i < 2000; i++)
+		{
+			String value = corpus.next();
+			assertTrue(value, value.length() >= 10 && value.length() <= 200);
+			totalLength += value.length();
+			if (corpus.getLastMix() == Mix.LATIN)
+				latin++;
+			else
+				assertEquals(Mix.HANGUL, corpus.getLastMix());
+		}
+		assertTrue("latin: " + latin, latin > 1300 && latin < 1700);
+		// words run past the target length, and the maximum pulls the mean down a little
+		long mean = totalLength / 2000;
+		assertTrue("mean length: " + mean, mean > 40 && mean < 65);
+	}
+
+@Test
+	public void testRepeatRate() throws Exception
+	{
+		SyntheticCJKCorpus corpus = new SyntheticCJKCorpus(random.nextLong());
+		corpus.setRepeatRate(0.5);
+		corpus.setLengths(20, 40, 100);
+		Set<String> distinct = new HashSet<String>(corpus.next(2000));
+		assertTrue("distinct: " + distinct.size(), distinct.size() > 850 && distinct.size() < 1150);
+
+		corpus = new SyntheticCJKCorpus(random.nextLong());
+		corpus.setLengths(20, 40, 100);
+		assertEquals(500, new HashSet<String>(corpus.next(500)).size());
+	}
+
+	/**
+	 * several threads sharing an Analyzer and SieveStatistics produce the
+	 * same tokens as a single thread does
+	 */
+@Test
+	public void testConcurrentSieve() throws Exception
+	{
+		SyntheticCJKCorpus corpus = new SyntheticCJKCorpus(random.nextLong());
+		corpus.setRepeatRate(0.1);
+		corpus.setLengths(1, 60, 2000);
+		final List<String> values = corpus.next(300 * RANDOM_MULTIPLIER);
+
+		SieveStatistics serialStats = SieveStatistics.forName("TestSyntheticCJKCorpus.serial." + random.nextLong());
+		Analyzer serial = getSieveAnalyzer(CJKEmitType.JAPANESE, serialStats);
+		final List<String> expected = new ArrayList<String>();
+		for (String value : values)
+			expected.add(tokens(serial, value));
+
+		final SieveStatistics stats = SieveStatistics.forName("TestSyntheticCJKCorpus.concurrent." + random.nextLong());
+		final Analyzer shared = getSieveAnalyzer(CJKEmitType.JAPANESE, stats);
+		int numThreads = 4;
+		final Throwable[] failures = new Throwable[numThreads];
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++)
+		{
+			final int threadNum = t;
+			final long seed = random.nextLong();
+			threads[t] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						// each thread works through the values in its own order
+						List<Integer> order = new ArrayList<Integer>();
+						for (int i = 0; i < values.size(); i++)
+							order.add(i);
+						Collections.shuffle(order, new Random(seed));
+						for (int i : order)
+							assertEquals(values.get(i), expected.get(i), tokens(shared, values.get(i)));
+					}
+					catch (Throwable e)
+					{
+						failures[threadNum] = e;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		for (Throwable failure : failures)
+			if (failure != null)
+				throw new RuntimeException(failure);
+
+		assertEquals(numThreads * serialStats.getValues(), stats.getValues());
+		assertEquals(numThreads * serialStats.getValuesEmitted(), stats.getValuesEmitted());
+		assertEquals(numThreads * serialStats.getTokens(), stats.getTokens());
+		assertEquals(numThreads * serialStats.getTokensEmitted(), stats.getTokensEmitted());
+	}
+
+	private static void assertMixMasks(Mix mix, int required, int allowed)
+	{
+		SyntheticCJKCorpus corpus = new SyntheticCJKCorpus(random.nextLong());
+		corpus.setOnly(mix);
+		corpus.setLengths(8, 30, 200);
+		for (String value : corpus.next(200))
+		{
+			int mask = CJKScriptClassifier.scriptMask(value);
+			assertEquals(value, required, mask & required);
+			assertEquals(value, 0, mask & ~allowed);
+		}
+	}
+
+	/**
+	 * @return terms and offsets of each token, and the final offset
+	 */
+	private static String tokens(Analyzer a, String text) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		TokenStream ts = a.reusableTokenStream("dummy", new StringReader(text));
+		CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+		OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+		ts.reset();
+		while (ts.incrementToken())
+			sb.append(termAtt).append('/').append(offsetAtt.startOffset()).append('-').append(offsetAtt.endOffset()).append(' ');
+		ts.end();
+		sb.append(offsetAtt.endOffset());
+		ts.close();
+		return sb.toString();
+	}
+
+	/**
+	 * @return Analyzer of a StandardTokenizer followed by CJKSieveFilter
+	 */
+	private static Analyzer getSieveAnalyzer(final CJKEmitType emitType, final SieveStatistics stats)
+	{
+		final CJKSieveRules rules = new CJKSieveRules(emitType);
+		return new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				return new TokenStreamComponents(t, new CJKSieveFilter(t, new CJKSieveRules.Source()
+				{
+					public CJKSieveRules getRules()
+					{
+						return rules;
+					}
+				}, stats));
+			}
+		};
+	}
+}
@@ -0,0 +1,241 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.lucene.analysis.cjk;
+
+import java.io.*;
+
+import org.apache.lucene.analysis.*;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.util._TestUtil;
+import org.junit.*;
+
+/**
+ * Tests for TokenCachingAnalyzer and AnalyzedTokenCache
+ */
+public class TestTokenCachingAnalyzer extends BaseTokenStreamTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+	private File cacheFile;
+
+	@Override
+	public void setUp() throws Exception
+	{
+		super.setUp();
+		File dir = _TestUtil.getTempDir("tokencache");
+		dir.mkdirs();
+		cacheFile = new File(dir, "tokens.seg");
+	}
+
+@Test
+	public void testSecondAnalysisIsReplayed() throws Exception
+	{
+		CountingAnalyzer delegate = new CountingAnalyzer(CJKEmitType.HANGUL);
+		AnalyzedTokenCache cache = new AnalyzedTokenCache(cacheFile);
+		Analyzer a = new TokenCachingAnalyzer(delegate, cache, "text_ko v1");
+
+		for (int i = 0; i < 2; i++)
+		{
+			assertTokenStreamContents(a.tokenStream("dummy", new StringReader("한국경제 hangul")),
+				new String[] { "한국경제", "hangul" },
+				new int[] { 0, 5 },   // startOffsets
+				new int[] { 4, 11 },  // endOffsets
+				new String[] { "<HANGUL>", "<ALPHANUM>" },
+				new int[] { 1, 1 },  // positionIncrements
+				11);  // final offset
+			assertAnalyzesTo(a, "マンガ is katakana", new String[] {});
+		}
+		assertEquals(2, delegate.count);
+		assertEquals(2, cache.size());
+		cache.close();
+	}
+
+@Test
+	public void testCachePersists() throws Exception
+	{
+		AnalyzedTokenCache cache = new AnalyzedTokenCache(cacheFile);
+		assertAnalyzesTo(new TokenCachingAnalyzer(new CountingAnalyzer(CJKEmitType.JAPANESE), cache, "text_ja"),
+			"日本マンガ", new String[] { "日", "本", "マンガ" });
+		cache.close();
+
+		CountingAnalyzer delegate = new CountingAnalyzer(CJKEmitType.JAPANESE);
+		cache = new AnalyzedTokenCache(cacheFile);
+		assertEquals(1, cache.size());
+		assertAnalyzesTo(new TokenCachingAnalyzer(delegate, cache, "text_ja"),
+			"日本マンガ",
+			new String[] { "日", "本", "マンガ" },
+			new int[] { 0, 1, 2 },
+			new int[] { 1, 2, 5 },
+			new String[] { "<IDEOGRAPHIC>", "<IDEOGRAPHIC>", "<KATAKANA>" },
+			new int[] { 1, 1, 1 });
+		assertEquals(0, delegate.count);
+		cache.close();
+	}
+
+@Test
+	public void testKeyIncludesChainConfigAndField() throws Exception
+	{
+		CountingAnalyzer delegate = new CountingAnalyzer(CJKEmitType.ANY_CJK);
+		AnalyzedTokenCache cache = new AnalyzedTokenCache(cacheFile);
+		Analyzer v1 = new TokenCachingAnalyzer(delegate, cache, "v1");
+		Analyzer v2 = new TokenCachingAnalyzer(delegate, cache, "v2");
+		assertTokenStreamContents(v1.tokenStream("title", new StringReader("壇君")), new String[] { "壇", "君" });
+		assertTokenStreamContents(v2.tokenStream("title", new StringReader("壇君")), new String[] { "壇", "君" });
+		assertTokenStreamContents(v1.tokenStream("author", new StringReader("壇君")), new String[] { "壇", "君" });
+		assertTokenStreamContents(v1.tokenStream("title", new StringReader("壇君")), new String[] { "壇", "君" });
+		assertEquals(3, delegate.count);
+		cache.close();
+	}
+
+@Test
+	public void testTruncatedRecordDiscarded() throws Exception
+	{
+		AnalyzedTokenCache cache = new AnalyzedTokenCache(cacheFile);
+		Analyzer a = new TokenCachingAnalyzer(new CountingAnalyzer(CJKEmitType.NO_CJK), cache, "v1");
+		assertAnalyzesTo(a, "no cjk", new String[] { "no", "cjk" });
+		assertAnalyzesTo(a, "more latin", new String[] { "more", "latin" });
+		cache.close();
+
+		// simulate a crash part way through writing the last record
+		RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw");
+		raf.setLength(raf.length() - 3);
+		raf.close();
+
+		CountingAnalyzer delegate = new CountingAnalyzer(CJKEmitType.NO_CJK);
+		cache = new AnalyzedTokenCache(cacheFile);
+		assertEquals(1, cache.size());
+		a = new TokenCachingAnalyzer(delegate, cache, "v1");
+		assertAnalyzesTo(a, "no cjk", new String[] { "no", "cjk" });
+		assertAnalyzesTo(a, "more latin", new String[] { "more", "latin" });
+		assertEquals(1, delegate.count);
+		assertEquals(2, cache.size());
+		cache.close();
+	}
+
+@Test
+	public void testOlderVersionRebuilt() throws Exception
+	{
+		// a version 1 file with one (unreadable) record
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(cacheFile));
+		out.writeInt(0x434A4B54);
+		out.writeInt(1);
+		out.writeInt(20);
+		out.write(new byte[20]);
+		out.close();
+
+		AnalyzedTokenCache cache = new AnalyzedTokenCache(cacheFile);
+		assertEquals(0, cache.size());
+		assertAnalyzesTo(new TokenCachingAnalyzer(new CountingAnalyzer(CJKEmitType.HANGUL), cache, "v1"),
+			"한국경제", new String[] { "한국경제" });
+		cache.close();
+
+		CountingAnalyzer delegate = new CountingAnalyzer(CJKEmitType.HANGUL);
+		cache = new AnalyzedTokenCache(cacheFile);
+		assertEquals(1, cache.size());
+		assertAnalyzesTo(new TokenCachingAnalyzer(delegate, cache, "v1"), "한국경제", new String[] { "한국경제" });
+		assertEquals(0, delegate.count);
+		cache.close();
+	}
+
+@Test
+	public void testNotACacheFile() throws Exception
+	{
+		Writer w = new OutputStreamWriter(new FileOutputStream(cacheFile), "UTF-8");
+		w.write("not a token cache");
+		w.close();
+		try
+		{
+			new AnalyzedTokenCache(cacheFile);
+			fail("opened a file that isn't a token cache");
+		}
+		catch (IOException e)
+		{
+			assertTrue(e.getMessage().startsWith("not a token cache file"));
+		}
+		// left as it was
+		assertEquals(17, cacheFile.length());
+	}
+
+@Test
+	public void testTermOver64kBytes() throws Exception
+	{
+		// 3 UTF-8 bytes per ideograph, well past what writeUTF can hold
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 30000; i++)
+			sb.append('日');
+		String longTerm = sb.toString();
+		Analyzer keyword = new Analyzer()
+		{
+			@Override
+			public TokenStream tokenStream(String fieldName, Reader reader)
+			{
+				return new KeywordTokenizer(reader);
+			}
+		};
+
+		AnalyzedTokenCache cache = new AnalyzedTokenCache(cacheFile);
+		assertAnalyzesTo(new TokenCachingAnalyzer(keyword, cache, "v1"), longTerm, new String[] { longTerm });
+		cache.close();
+
+		cache = new AnalyzedTokenCache(cacheFile);
+		assertEquals(1, cache.size());
+		assertAnalyzesTo(new TokenCachingAnalyzer(keyword, cache, "v1"), longTerm, new String[] { longTerm });
+		cache.close();
+	}
+
+@Test
+	public void testRandomStrings() throws Exception
+	{
+		AnalyzedTokenCache cache = new AnalyzedTokenCache(cacheFile);
+		checkRandomData(random, new TokenCachingAnalyzer(new CountingAnalyzer(CJKEmitType.ANY_CJK), cache, "v1"), 1000 * RANDOM_MULTIPLIER);
+		cache.close();
+	}
+
+	/**
+	 * StandardTokenizer followed by CJKSieveFilter, counting the number of token streams created
+	 */
+	private static final class CountingAnalyzer extends Analyzer
+	{
+		private final CJKEmitType emitType;
+		int count = 0;
+
+		CountingAnalyzer(CJKEmitType emitType)
+		{
+			this.emitType = emitType;
+		}
+
+		@Override
+		public final TokenStream tokenStream(String fieldName, Reader reader)
+		{
+			count++;
+			return new CJKSieveFilter(new StandardTokenizer(TEST_VERSION_CURRENT, reader), emitType);
+		}
+	}
+}
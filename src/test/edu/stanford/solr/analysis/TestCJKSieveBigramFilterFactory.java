@@ -0,0 +1,141 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.*;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.util._TestUtil;
+import org.apache.solr.core.SolrResourceLoader;
+import org.junit.Test;
+
+import edu.stanford.lucene.analysis.cjk.CJKEmitType;
+import edu.stanford.lucene.analysis.cjk.CJKSieveBigramFilter;
+import edu.stanford.lucene.analysis.cjk.SieveStatistics;
+
+/**
+ * Tests for CJKSieveBigramFilterFactory
+ */
+public class TestCJKSieveBigramFilterFactory extends BaseTokenStreamTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+@Test
+	public void testHangul() throws Exception
+	{
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("emitIf", "hangul");
+		args.put("stats", "TestCJKSieveBigramFilterFactory");
+		CJKSieveBigramFilterFactory factory = new CJKSieveBigramFilterFactory();
+		factory.init(args);
+
+		TokenStream stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("한국어 日本")));
+		assertTrue(stream instanceof CJKSieveBigramFilter);
+		assertTokenStreamContents(stream, new String[] { "한국", "국어", "日本" });
+		stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("日本 only")));
+		assertTokenStreamContents(stream, new String[] {});
+		assertEquals(2, SieveStatistics.forName("TestCJKSieveBigramFilterFactory").getValues());
+	}
+
+@Test
+	public void testFlags() throws Exception
+	{
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("emitIf", "any_cjk");
+		args.put("han", "false");
+		args.put("hiragana", "false");
+		args.put("katakana", "false");
+		CJKSieveBigramFilterFactory factory = new CJKSieveBigramFilterFactory();
+		factory.init(args);
+		TokenStream stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("한국어 日本")));
+		assertTokenStreamContents(stream, new String[] { "한국", "국어", "日", "本" });
+	}
+
+@Test
+	public void testEmitArgMissing() throws Exception
+	{
+		try
+		{
+			new CJKSieveBigramFilterFactory().init(new HashMap<String,String>());
+			fail("no RuntimeException thrown when missing emitIf parameter");
+		}
+		catch (RuntimeException e)
+		{
+			assertTrue(e.getMessage().startsWith("Configuration Error: missing parameter 'emitIf'"));
+		}
+	}
+
+@Test
+	public void testRulesFileBudgetRejected() throws Exception
+	{
+		File instanceDir = _TestUtil.getTempDir("sievebigramrules");
+		File confDir = new File(instanceDir, "conf");
+		confDir.mkdirs();
+		File rulesFile = new File(confDir, "sieve.properties");
+		writeRules(rulesFile, "emitIf=hangul\nmaxTokens=100\n");
+
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("rules", "sieve.properties");
+		args.put("rulesCheckInterval", "0");
+		CJKSieveBigramFilterFactory factory = new CJKSieveBigramFilterFactory();
+		factory.init(args);
+		try
+		{
+			factory.inform(new SolrResourceLoader(instanceDir.getPath()));
+			fail("no RuntimeException thrown for a budget in the rules file");
+		}
+		catch (RuntimeException e)
+		{
+			assertTrue(e.getMessage().startsWith("Configuration Error: CJKSieveBigramFilterFactory does not support budgets"));
+		}
+
+		// a budget in reloaded rules is ignored, keeping the previous rules
+		writeRules(rulesFile, "emitIf=hangul\n");
+		factory = new CJKSieveBigramFilterFactory();
+		factory.init(args);
+		factory.inform(new SolrResourceLoader(instanceDir.getPath()));
+		writeRules(rulesFile, "emitIf=japanese\nmaxMillis=5\n");
+		rulesFile.setLastModified(rulesFile.lastModified() + 5000);
+		assertEquals(CJKEmitType.HANGUL, factory.getRules().getEmitType());
+		assertEquals(0L, factory.getRules().getMaxMillis());
+		TokenStream stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("한국어")));
+		assertTokenStreamContents(stream, new String[] { "한국", "국어" });
+	}
+
+	private void writeRules(File rulesFile, String contents) throws IOException
+	{
+		Writer w = new OutputStreamWriter(new FileOutputStream(rulesFile), "UTF-8");
+		w.write(contents);
+		w.close();
+	}
+}
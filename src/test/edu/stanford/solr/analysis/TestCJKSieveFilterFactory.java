@@ -27,12 +27,20 @@ SOFTWARE.
 
 package edu.stanford.solr.analysis;
 
-import java.io.StringReader;
+import java.io.*;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.lucene.analysis.*;
 import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.util._TestUtil;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.SolrResourceLoader;
+
+import edu.stanford.lucene.analysis.cjk.CJKEmitType;
+import edu.stanford.lucene.analysis.cjk.CJKSieveFilter;
+import edu.stanford.lucene.analysis.cjk.SieveStatistics;
 
 import org.junit.Test;
 
@@ -141,6 +149,201 @@ public class TestCJKSieveFilterFactory extends BaseTokenStreamTestCase
 		}
 	}
 
+@Test
+	public void testHints() throws Exception
+	{
+		CJKSieveFilterFactory factory = new CJKSieveFilterFactory();
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("emitIf", "hangul");
+		args.put("hintChannel", "TestCJKSieveFilterFactory.hints");
+		factory.init(args);
+		ScriptHintCharFilterFactory charFilterFactory = new ScriptHintCharFilterFactory();
+		Map<String,String> charFilterArgs = new HashMap<String,String>();
+		charFilterArgs.put("hintChannel", "TestCJKSieveFilterFactory.hints");
+		charFilterFactory.init(charFilterArgs);
+
+		CharStream chars = charFilterFactory.create(CharReader.get(new StringReader("[[sieve:kor]]romanized korean")));
+		TokenStream stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, chars));
+		assertTokenStreamContents(stream, new String[] { "romanized", "korean" });
+		chars = charFilterFactory.create(CharReader.get(new StringReader("[[sieve:jpn]]한국경제")));
+		stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, chars));
+		assertTokenStreamContents(stream, new String[] {});
+
+		// a sieve on another channel doesn't see the hint
+		args.put("hintChannel", "TestCJKSieveFilterFactory.otherHints");
+		factory = new CJKSieveFilterFactory();
+		factory.init(args);
+		chars = charFilterFactory.create(CharReader.get(new StringReader("[[sieve:kor]]romanized korean")));
+		stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, chars));
+		assertTokenStreamContents(stream, new String[] {});
+	}
+
+@Test
+	public void testHintChannelMissing() throws Exception
+	{
+		try
+		{
+			new ScriptHintCharFilterFactory().init(new HashMap<String,String>());
+			fail("no RuntimeException thrown when missing hintChannel parameter");
+		}
+		catch (RuntimeException e)
+		{
+			assertTrue(e.getMessage().startsWith("Configuration Error: missing parameter 'hintChannel'"));
+		}
+	}
+
+@Test
+	public void testBudget() throws Exception
+	{
+		CJKSieveFilterFactory factory = new CJKSieveFilterFactory();
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("emitIf", "japanese");
+		args.put("maxTokens", "3");
+		args.put("budgetFallback", "suppress");
+		args.put("stats", "TestCJKSieveFilterFactory.budget");
+		factory.init(args);
+
+		TokenStream stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("a long value before マンガ")));
+		assertTokenStreamContents(stream, new String[] {});
+		stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("short マンガ")));
+		assertTokenStreamContents(stream, new String[] { "short", "マンガ" });
+		SieveStatistics stats = SieveStatistics.forName("TestCJKSieveFilterFactory.budget");
+		assertEquals(2, stats.getValues());
+		assertEquals(1, stats.getBudgetExceeded());
+	}
+
+@Test
+	public void testBudgetFallbackBad() throws Exception
+	{
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("emitIf", "japanese");
+		args.put("maxMillis", "100");
+		args.put("budgetFallback", "ignore");
+		try
+		{
+			new CJKSieveFilterFactory().init(args);
+			fail("no RuntimeException thrown for bad budgetFallback parameter");
+		}
+		catch (RuntimeException e)
+		{
+			assertEquals("Configuration Error: parameter 'budgetFallback' for CJKSieveFilterFactory must be one of:  emit, suppress, scripts_so_far", e.getMessage());
+		}
+	}
+
+@Test
+	public void testBudgetLimitBad() throws Exception
+	{
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("emitIf", "japanese");
+		args.put("maxTokens", "-1");
+		try
+		{
+			new CJKSieveFilterFactory().init(args);
+			fail("no RuntimeException thrown for negative maxTokens parameter");
+		}
+		catch (RuntimeException e)
+		{
+			assertEquals("Configuration Error: parameter 'maxTokens' for CJKSieveFilterFactory must be a number, not negative", e.getMessage());
+		}
+	}
+
+@Test
+	public void testShadowEmitIf() throws Exception
+	{
+		CJKSieveFilterFactory factory = new CJKSieveFilterFactory();
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("emitIf", "japanese");
+		args.put("shadowEmitIf", "cj, any_cjk");
+		args.put("stats", "TestCJKSieveFilterFactory.shadow");
+		factory.init(args);
+		assertEquals(CJKEmitType.JAPANESE, factory.getRules().getEmitType());
+		assertEquals(Arrays.asList(CJKEmitType.CJ, CJKEmitType.ANY_CJK), Arrays.asList(factory.getRules().getShadowEmitTypes()));
+
+		TokenStream stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("壇君")));
+		assertTokenStreamContents(stream, new String[] {});
+		stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("한국경제")));
+		assertTokenStreamContents(stream, new String[] {});
+
+		NamedList<?> sieve = (NamedList<?>) SieveStatisticsRequestHandler.getSieveStatistics().get("TestCJKSieveFilterFactory.shadow");
+		NamedList<?> cj = (NamedList<?>) ((NamedList<?>) sieve.get("shadows")).get("cj");
+		assertEquals(2L, cj.get("values"));
+		assertEquals(1L, cj.get("agreements"));
+		assertEquals(1L, cj.get("disagreements"));
+		assertEquals(2L, cj.get("tokensEmitted"));
+		assertEquals(2L, cj.get("tokensEmittedChange"));
+		NamedList<?> anyCjk = (NamedList<?>) ((NamedList<?>) sieve.get("shadows")).get("any_cjk");
+		assertEquals(0L, anyCjk.get("agreements"));
+		assertEquals(3L, anyCjk.get("tokensEmitted"));
+	}
+
+@Test
+	public void testShadowEmitIfBad() throws Exception
+	{
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("emitIf", "japanese");
+		args.put("shadowEmitIf", "cj,chinese");
+		try
+		{
+			new CJKSieveFilterFactory().init(args);
+			fail("no RuntimeException thrown for bad shadowEmitIf parameter");
+		}
+		catch (RuntimeException e)
+		{
+			assertEquals("Configuration Error: parameter 'shadowEmitIf' for CJKSieveFilterFactory must be one of:  japanese, hangul, han_solo, cj, any_cjk, no_cjk", e.getMessage());
+		}
+	}
+
+@Test
+	public void testRulesFileReloaded() throws Exception
+	{
+		File instanceDir = _TestUtil.getTempDir("sieverules");
+		File confDir = new File(instanceDir, "conf");
+		confDir.mkdirs();
+		File rulesFile = new File(confDir, "sieve.properties");
+		writeRules(rulesFile, "# comment\nemitIf = hangul\n");
+
+		CJKSieveFilterFactory factory = new CJKSieveFilterFactory();
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("rules", "sieve.properties");
+		args.put("rulesCheckInterval", "0");
+		factory.init(args);
+		factory.inform(new SolrResourceLoader(instanceDir.getPath()));
+		assertEquals(CJKEmitType.HANGUL, factory.getRules().getEmitType());
+
+		Tokenizer tokenizer = new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("한국경제 hangul only"));
+		TokenStream stream = factory.create(tokenizer);
+		assertTokenStreamContents(stream, new String[] { "한국경제", "hangul", "only" });
+
+		writeRules(rulesFile, "emitIf=japanese\n");
+		rulesFile.setLastModified(rulesFile.lastModified() + 5000);
+
+		// the reused stream picks up the new rules for the next value
+		tokenizer.reset(new StringReader("한국경제 hangul only"));
+		assertTokenStreamContents(stream, new String[] {});
+		tokenizer.reset(new StringReader("マンガ is katakana"));
+		assertTokenStreamContents(stream, new String[] { "マンガ", "is", "katakana" });
+
+		// bad rules are ignored
+		writeRules(rulesFile, "emitIf=klingon\n");
+		rulesFile.setLastModified(rulesFile.lastModified() + 5000);
+		assertEquals(CJKEmitType.JAPANESE, factory.getRules().getEmitType());
+
+		// the budget is part of the rules
+		writeRules(rulesFile, "emitIf=japanese\nmaxTokens=1\nbudgetFallback=suppress\n");
+		rulesFile.setLastModified(rulesFile.lastModified() + 10000);
+		tokenizer.reset(new StringReader("is katakana マンガ"));
+		assertTokenStreamContents(stream, new String[] {}, new int[] {}, new int[] {}, 15);
+		assertEquals(1, factory.getRules().getMaxTokens());
+		assertEquals(CJKSieveFilter.BudgetFallback.SUPPRESS, factory.getRules().getBudgetFallback());
+	}
+
+	private void writeRules(File rulesFile, String contents) throws IOException
+	{
+		Writer w = new OutputStreamWriter(new FileOutputStream(rulesFile), "UTF-8");
+		w.write(contents);
+		w.close();
+	}
+
 	private CJKSieveFilterFactory getCJKSieveFilterFactory(String emitIf) throws Exception
 	{
 		CJKSieveFilterFactory factory = new CJKSieveFilterFactory();
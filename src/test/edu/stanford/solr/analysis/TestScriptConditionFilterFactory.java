@@ -0,0 +1,125 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.*;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.util._TestUtil;
+import org.apache.solr.analysis.CJKBigramFilterFactory;
+import org.apache.solr.analysis.LowerCaseFilterFactory;
+import org.apache.solr.core.SolrResourceLoader;
+
+import org.junit.Test;
+
+import edu.stanford.lucene.analysis.cjk.ScriptConditionFilter;
+
+/**
+ * Tests for ScriptConditionFilterFactory
+ */
+public class TestScriptConditionFilterFactory extends BaseTokenStreamTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+@Test
+	public void testInnerChain() throws Exception
+	{
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("applyIf", "cj");
+		args.put("filters", "solr.LowerCaseFilterFactory, solr.CJKBigramFilterFactory");
+		args.put("luceneMatchVersion", TEST_VERSION_CURRENT.toString());
+		ScriptConditionFilterFactory factory = getFactory(args);
+		assertTrue(factory.getFilters()[0] instanceof LowerCaseFilterFactory);
+		assertTrue(factory.getFilters()[1] instanceof CJKBigramFilterFactory);
+
+		TokenStream stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("日本語 MANGA 한국어")));
+		assertTrue(stream instanceof ScriptConditionFilter);
+		// Latin and Hangul tokens bypass both inner filters
+		assertTokenStreamContents(stream, new String[] { "日本", "本語", "MANGA", "한국어" });
+	}
+
+@Test
+	public void testInnerArgs() throws Exception
+	{
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("applyIf", "any_cjk");
+		args.put("filters", "solr.CJKBigramFilterFactory");
+		args.put("CJKBigramFilterFactory.hangul", "false");
+		ScriptConditionFilterFactory factory = getFactory(args);
+		TokenStream stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("日本語 한국어")));
+		assertTokenStreamContents(stream, new String[] { "日本", "本語", "한국어" });
+	}
+
+@Test
+	public void testMissingFilters() throws Exception
+	{
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("applyIf", "any_cjk");
+		try
+		{
+			new ScriptConditionFilterFactory().init(args);
+			fail("no RuntimeException thrown when missing filters parameter");
+		}
+		catch (RuntimeException e)
+		{
+			assertEquals("Configuration Error: missing parameter 'filters' for ScriptConditionFilterFactory", e.getMessage());
+		}
+	}
+
+@Test
+	public void testBadApplyIf() throws Exception
+	{
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("applyIf", "chinese");
+		args.put("filters", "solr.CJKBigramFilterFactory");
+		try
+		{
+			new ScriptConditionFilterFactory().init(args);
+			fail("no RuntimeException thrown for bad applyIf parameter");
+		}
+		catch (RuntimeException e)
+		{
+			assertEquals("Configuration Error: parameter 'applyIf' for ScriptConditionFilterFactory must be one of:  japanese, hangul, han_solo, cj, any_cjk, no_cjk", e.getMessage());
+		}
+	}
+
+	private ScriptConditionFilterFactory getFactory(Map<String,String> args) throws Exception
+	{
+		ScriptConditionFilterFactory factory = new ScriptConditionFilterFactory();
+		factory.init(args);
+		File instanceDir = _TestUtil.getTempDir("scriptcondition");
+		instanceDir.mkdirs();
+		factory.inform(new SolrResourceLoader(instanceDir.getPath()));
+		return factory;
+	}
+}
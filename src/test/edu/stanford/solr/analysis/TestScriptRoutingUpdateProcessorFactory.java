@@ -0,0 +1,211 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+
+import org.junit.Test;
+
+import edu.stanford.lucene.analysis.cjk.SyntheticCJKCorpus;
+
+/**
+ * Tests for ScriptRoutingUpdateProcessorFactory
+ */
+public class TestScriptRoutingUpdateProcessorFactory extends LuceneTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+@Test
+	public void testRouteField() throws Exception
+	{
+		ScriptRoutingUpdateProcessorFactory factory = getFactory("fields", "title, subject", "routes", "hangul:ko,japanese:ja,any_cjk:cjk",
+			"default", "latin", "routeField", "route");
+		CollectingProcessor collector = new CollectingProcessor();
+		UpdateRequestProcessor processor = factory.getInstance(null, null, collector);
+
+		processor.processAdd(add("1", "한국어", null));
+		processor.processAdd(add("2", "a title", "日本のマンガ"));
+		processor.processAdd(add("3", "中国", null));
+		processor.processAdd(add("4", "a title", "a subject"));
+		processor.processAdd(add("5", null, null));
+		assertEquals(5, collector.docs.size());
+		String[] expected = { "ko", "ja", "cjk", "latin", "latin" };
+		for (int i = 0; i < expected.length; i++)
+		{
+			assertEquals(expected[i], collector.docs.get(i).getFieldValue("route"));
+			assertEquals(Integer.toString(i + 1), collector.docs.get(i).getFieldValue("id"));
+		}
+	}
+
+@Test
+	public void testNoDefault() throws Exception
+	{
+		ScriptRoutingUpdateProcessorFactory factory = getFactory("fields", "title", "routes", "any_cjk:cjk", "routeField", "route");
+		CollectingProcessor collector = new CollectingProcessor();
+		UpdateRequestProcessor processor = factory.getInstance(null, null, collector);
+
+		processor.processAdd(add("1", "日本語", null));
+		processor.processAdd(add("2", "日本語", null));
+		processor.processAdd(add("3", "latin", null));
+		assertEquals("cjk", collector.docs.get(0).getFieldValue("route"));
+		assertEquals("cjk", collector.docs.get(1).getFieldValue("route"));
+		assertNull(collector.docs.get(2).getFieldValue("route"));
+		// the uniqueKey is never changed
+		assertEquals("1", collector.docs.get(0).getFieldValue("id"));
+		assertEquals(2L, factory.getRouteCounts().get("cjk").longValue());
+	}
+
+	/**
+	 * route a synthetic corpus, and check the keys and the balance between them
+	 */
+@Test
+	public void testBalance() throws Exception
+	{
+		ScriptRoutingUpdateProcessorFactory factory = getFactory("fields", "title, subject", "routes", "hangul:ko,japanese:ja,any_cjk:cjk",
+			"default", "latin", "minChars", "2", "routeField", "route");
+		CollectingProcessor collector = new CollectingProcessor();
+		UpdateRequestProcessor processor = factory.getInstance(null, null, collector);
+
+		SyntheticCJKCorpus corpus = new SyntheticCJKCorpus(random.nextLong());
+		corpus.setLengths(4, 30, 300);
+		int numDocs = 600 * RANDOM_MULTIPLIER;
+		List<SyntheticCJKCorpus.Mix> mixes = new ArrayList<SyntheticCJKCorpus.Mix>();
+		for (int i = 0; i < numDocs; i++)
+		{
+			processor.processAdd(add(Integer.toString(i), corpus.next(), null));
+			mixes.add(corpus.getLastMix());
+		}
+		processor.finish();
+
+		for (int i = 0; i < numDocs; i++)
+		{
+			SolrInputDocument doc = collector.docs.get(i);
+			String route = (String) doc.getFieldValue("route");
+			assertEquals(Integer.toString(i), doc.getFieldValue("id"));
+			switch (mixes.get(i))
+			{
+				case LATIN:
+				case NOISE:
+					assertEquals(doc.toString(), "latin", route);
+					break;
+				case HANGUL:
+					assertEquals(doc.toString(), "ko", route);
+					break;
+				case HAN:
+					assertEquals(doc.toString(), "cjk", route);
+					break;
+			}
+		}
+
+		Map<String,Long> counts = factory.getRouteCounts();
+		assertEquals(4, counts.size());
+		long total = 0;
+		for (Map.Entry<String,Long> entry : counts.entrySet())
+		{
+			long n = entry.getValue();
+			total += n;
+			assertTrue(entry.getKey() + " has " + n + " of " + numDocs, n > numDocs / 20 && n < numDocs / 2);
+		}
+		assertEquals(numDocs, total);
+	}
+
+@Test
+	public void testBadConfiguration() throws Exception
+	{
+		assertConfigurationError("routes", "any_cjk:cjk", "routeField", "route");
+		assertConfigurationError("fields", "title", "routeField", "route");
+		assertConfigurationError("fields", "title", "routes", "any_cjk:cjk");
+		assertConfigurationError("fields", "title", "routes", "any_cjk", "routeField", "route");
+		assertConfigurationError("fields", "title", "routes", "korean:ko", "routeField", "route");
+		assertConfigurationError("fields", "title", "routes", "any_cjk:cjk", "routeField", "route", "minChars", "0");
+		assertConfigurationError("fields", "title", "routes", "any_cjk:cjk", "routeField", "route", "minChars", "two");
+	}
+
+	private void assertConfigurationError(String... keysAndValues)
+	{
+		try
+		{
+			getFactory(keysAndValues);
+			fail("expected a configuration error");
+		}
+		catch (RuntimeException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Configuration Error"));
+		}
+	}
+
+	private ScriptRoutingUpdateProcessorFactory getFactory(String... keysAndValues)
+	{
+		NamedList<String> args = new NamedList<String>();
+		for (int i = 0; i < keysAndValues.length; i += 2)
+			args.add(keysAndValues[i], keysAndValues[i + 1]);
+		ScriptRoutingUpdateProcessorFactory factory = new ScriptRoutingUpdateProcessorFactory();
+		factory.init(args);
+		return factory;
+	}
+
+	private static AddUpdateCommand add(String id, String title, String subject)
+	{
+		AddUpdateCommand cmd = new AddUpdateCommand();
+		cmd.solrDoc = new SolrInputDocument();
+		cmd.solrDoc.addField("id", id);
+		if (title != null)
+			cmd.solrDoc.addField("title", title);
+		if (subject != null)
+			cmd.solrDoc.addField("subject", subject);
+		return cmd;
+	}
+
+	/** the end of the chain:  keeps the documents added */
+	private static class CollectingProcessor extends UpdateRequestProcessor
+	{
+		final List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
+
+		CollectingProcessor()
+		{
+			super(null);
+		}
+
+		@Override
+		public void processAdd(AddUpdateCommand cmd) throws IOException
+		{
+			docs.add(cmd.getSolrInputDocument());
+		}
+	}
+}
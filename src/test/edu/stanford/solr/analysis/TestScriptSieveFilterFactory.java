@@ -0,0 +1,128 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.*;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+
+import org.junit.Test;
+
+import com.ibm.icu.lang.UScript;
+
+import edu.stanford.lucene.analysis.cjk.ScriptSieveFilter;
+import edu.stanford.lucene.analysis.cjk.SieveStatistics;
+
+/**
+ * Tests for ScriptSieveFilterFactory
+ */
+public class TestScriptSieveFilterFactory extends BaseTokenStreamTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+@Test
+	public void testAnyOfNoneOf() throws Exception
+	{
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("anyOf", "Thai, Lao");
+		args.put("noneOf", "Cyrl");
+		ScriptSieveFilterFactory factory = getFactory(args);
+		assertTrue(factory.getRule().getAnyOf().contains(UScript.THAI));
+		assertTrue(factory.getRule().getAnyOf().contains(UScript.LAO));
+		assertTrue(factory.getRule().getNoneOf().contains(UScript.CYRILLIC));
+
+		TokenStream stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("ภาษา thai")));
+		assertTrue(stream instanceof ScriptSieveFilter);
+		assertTokenStreamContents(stream, new String[] { "ภาษา", "thai" });
+		stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("ภาษา два")));
+		assertTokenStreamContents(stream, new String[] {});
+	}
+
+@Test
+	public void testEmitIf() throws Exception
+	{
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("emitIf", "hangul");
+		ScriptSieveFilterFactory factory = getFactory(args);
+		assertTrue(factory.getRule().getAnyOf().contains(UScript.HANGUL));
+		TokenStream stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("한국어 test")));
+		assertTokenStreamContents(stream, new String[] { "한국어", "test" });
+		stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("日本語 test")));
+		assertTokenStreamContents(stream, new String[] {});
+	}
+
+@Test
+	public void testStats() throws Exception
+	{
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("anyOf", "Thai");
+		args.put("stats", "TestScriptSieveFilterFactory.stats");
+		ScriptSieveFilterFactory factory = getFactory(args);
+		assertTokenStreamContents(factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("ภาษา"))), new String[] { "ภาษา" });
+		assertEquals(1, SieveStatistics.forName("TestScriptSieveFilterFactory.stats").getValuesEmitted());
+	}
+
+@Test
+	public void testBadConfiguration() throws Exception
+	{
+		assertConfigurationError(new String[] {});
+		assertConfigurationError(new String[] { "emitIf", "hangul", "anyOf", "Hangul" });
+		assertConfigurationError(new String[] { "emitIf", "korean" });
+		assertConfigurationError(new String[] { "anyOf", "Thai, Klingon" });
+		assertConfigurationError(new String[] { "noneOf", "Klingon" });
+	}
+
+	private void assertConfigurationError(String[] keysAndValues)
+	{
+		Map<String,String> args = new HashMap<String,String>();
+		for (int i = 0; i < keysAndValues.length; i += 2)
+			args.put(keysAndValues[i], keysAndValues[i + 1]);
+		try
+		{
+			getFactory(args);
+			fail("expected a configuration error for " + args);
+		}
+		catch (RuntimeException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Configuration Error"));
+		}
+	}
+
+	private ScriptSieveFilterFactory getFactory(Map<String,String> args)
+	{
+		ScriptSieveFilterFactory factory = new ScriptSieveFilterFactory();
+		args.put("luceneMatchVersion", TEST_VERSION_CURRENT.toString());
+		factory.init(args);
+		return factory;
+	}
+}
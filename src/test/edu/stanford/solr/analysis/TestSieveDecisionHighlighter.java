@@ -0,0 +1,208 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.common.params.HighlightParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrConfig;
+import org.apache.solr.highlight.SolrHighlighter;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocList;
+import org.apache.solr.search.DocSlice;
+
+import org.junit.Test;
+
+/**
+ * Tests for SieveDecisionHighlighter, with the stored decisions and the
+ * delegate highlighter faked
+ */
+public class TestSieveDecisionHighlighter extends LuceneTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+	private static final Query QUERY = new TermQuery(new Term("title_ja", "マンガ"));
+
+@Test
+	public void testSkipsRejectedFields() throws Exception
+	{
+		FakeHighlighter delegate = new FakeHighlighter();
+		Map<Integer,String[]> rejected = new HashMap<Integer,String[]>();
+		rejected.put(0, new String[] { "title_ko" });
+		rejected.put(1, new String[] { "title_ja", "title_ko" });
+		rejected.put(2, new String[] { "title_ko" });
+		rejected.put(4, new String[] { "title_ja", "title_ko", "title_latin" });
+		SieveDecisionHighlighter highlighter = new TestHighlighter(delegate, rejected);
+
+		SolrQueryRequest req = request("title_ja,title_ko,title_latin");
+		NamedList<Object> result = highlighter.doHighlighting(docs(0, 1, 2, 3, 4), QUERY, req, null);
+
+		// the delegate is called once per distinct set of fields
+		assertEquals(3, delegate.calls.size());
+		assertEquals("title_ja,title_latin", delegate.calls.get(0));
+		assertEquals("title_latin", delegate.calls.get(1));
+		assertEquals("title_ja,title_ko,title_latin", delegate.calls.get(2));
+		assertEquals("title_ja,title_ko,title_latin", req.getParams().get(HighlightParams.FIELDS));
+
+		// in the original order, with an entry for each document
+		assertEquals(5, result.size());
+		for (int i = 0; i < 5; i++)
+			assertEquals("doc" + i, result.getName(i));
+		assertEquals("[title_ja, title_latin]", fieldNames(result.getVal(0)));
+		assertEquals("[title_latin]", fieldNames(result.getVal(1)));
+		assertEquals("[title_ja, title_latin]", fieldNames(result.getVal(2)));
+		assertEquals("[title_ja, title_ko, title_latin]", fieldNames(result.getVal(3)));
+		assertEquals("[]", fieldNames(result.getVal(4)));
+	}
+
+@Test
+	public void testNothingRejected() throws Exception
+	{
+		FakeHighlighter delegate = new FakeHighlighter();
+		SieveDecisionHighlighter highlighter = new TestHighlighter(delegate, new HashMap<Integer,String[]>());
+		NamedList<Object> result = highlighter.doHighlighting(docs(3, 7), QUERY, request("title_ja title_ko"), null);
+		assertEquals(1, delegate.calls.size());
+		assertEquals("title_ja title_ko", delegate.calls.get(0));
+		assertEquals(2, result.size());
+	}
+
+@Test
+	public void testHighlightingDisabled() throws Exception
+	{
+		FakeHighlighter delegate = new FakeHighlighter();
+		Map<Integer,String[]> rejected = new HashMap<Integer,String[]>();
+		rejected.put(0, new String[] { "title_ja" });
+		SieveDecisionHighlighter highlighter = new TestHighlighter(delegate, rejected);
+		ModifiableSolrParams params = new ModifiableSolrParams();
+		params.set(HighlightParams.FIELDS, "title_ja");
+		assertNull(highlighter.doHighlighting(docs(0), QUERY, new LocalSolrQueryRequest(null, params), null));
+		assertEquals(0, delegate.calls.size());
+	}
+
+@Test
+	public void testFieldsToHighlight() throws Exception
+	{
+		String[] fields = { "a", "b", "c" };
+		assertEquals("[a, b, c]", SieveDecisionHighlighter.fieldsToHighlight(fields, null).toString());
+		assertEquals("[a, c]", SieveDecisionHighlighter.fieldsToHighlight(fields, new String[] { "b", "d" }).toString());
+		assertEquals("[]", SieveDecisionHighlighter.fieldsToHighlight(fields, new String[] { "c", "b", "a" }).toString());
+	}
+
+	private static String fieldNames(Object summaries)
+	{
+		NamedList<?> list = (NamedList<?>) summaries;
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < list.size(); i++)
+			names.add(list.getName(i));
+		return names.toString();
+	}
+
+	private static SolrQueryRequest request(String fields)
+	{
+		ModifiableSolrParams params = new ModifiableSolrParams();
+		params.set(HighlightParams.HIGHLIGHT, "true");
+		params.set(HighlightParams.FIELDS, fields);
+		return new LocalSolrQueryRequest(null, params);
+	}
+
+	private static DocList docs(int... ids)
+	{
+		return new DocSlice(0, ids.length, ids, null, ids.length, 0.0f);
+	}
+
+	/** gets the decisions from a map instead of stored fields */
+	private static class TestHighlighter extends SieveDecisionHighlighter
+	{
+		private final Map<Integer,String[]> rejected;
+
+		TestHighlighter(SolrHighlighter delegate, Map<Integer,String[]> rejected)
+		{
+			super(delegate, "sieve_rejected");
+			this.rejected = rejected;
+		}
+
+		@Override
+		boolean hasDecisions(SolrQueryRequest req)
+		{
+			return true;
+		}
+
+		@Override
+		Decision readDecision(SolrQueryRequest req, int docId)
+		{
+			return new Decision("doc" + docId, rejected.get(docId));
+		}
+	}
+
+	/** records hl.fl for each call, and gives each document a fragment for each field */
+	private static class FakeHighlighter extends SolrHighlighter
+	{
+		final List<String> calls = new ArrayList<String>();
+
+		@Override
+		@Deprecated
+		public void initalize(SolrConfig config)
+		{
+		}
+
+		@Override
+		public NamedList<Object> doHighlighting(DocList docs, Query query, SolrQueryRequest req, String[] defaultFields) throws IOException
+		{
+			if (!isHighlightingEnabled(req.getParams()))
+				return null;
+			calls.add(req.getParams().get(HighlightParams.FIELDS));
+			String[] fields = getHighlightFields(query, req, defaultFields);
+			NamedList<Object> result = new SimpleOrderedMap<Object>();
+			DocIterator iterator = docs.iterator();
+			while (iterator.hasNext())
+			{
+				int id = iterator.nextDoc();
+				NamedList<Object> summaries = new SimpleOrderedMap<Object>();
+				for (String field : fields)
+					summaries.add(field, new String[] { field + " of doc" + id });
+				result.add("doc" + id, summaries);
+			}
+			return result;
+		}
+	}
+}
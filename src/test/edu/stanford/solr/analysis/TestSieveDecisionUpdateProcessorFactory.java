@@ -0,0 +1,321 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.*;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+
+import org.junit.Test;
+
+import edu.stanford.lucene.analysis.cjk.CJKEmitType;
+import edu.stanford.lucene.analysis.cjk.CJKSieveFilter;
+import edu.stanford.lucene.analysis.cjk.CJKSieveRules;
+import edu.stanford.lucene.analysis.cjk.ScriptHintChannel;
+import edu.stanford.lucene.analysis.cjk.ScriptHintCharFilter;
+
+/**
+ * Tests for SieveDecisionUpdateProcessorFactory, with the schema's analyzers
+ * and copyFields faked
+ */
+public class TestSieveDecisionUpdateProcessorFactory extends BaseTokenStreamTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+@Test
+	public void testRejectedFields() throws Exception
+	{
+		TestFactory factory = getFactory("fields", "title_ja, title_ko, title_latin, subject_ko, unknown");
+		factory.analyzers.put("title_ja", sieveAnalyzer(CJKEmitType.JAPANESE));
+		factory.analyzers.put("title_ko", sieveAnalyzer(CJKEmitType.HANGUL));
+		factory.analyzers.put("title_latin", sieveAnalyzer(CJKEmitType.NO_CJK));
+		factory.analyzers.put("subject_ko", sieveAnalyzer(CJKEmitType.HANGUL));
+		assertEquals("sieve_rejected", factory.getRejectedField());
+
+		SolrInputDocument doc = new SolrInputDocument();
+		doc.addField("id", "1");
+		doc.addField("title_ja", "日本のマンガ");
+		doc.addField("title_ko", "日本のマンガ");
+		doc.addField("title_latin", "日本のマンガ");
+		doc.addField("unknown", "日本のマンガ");
+		// subject_ko has no values, and unknown has no analyzer, so neither is rejected
+		assertRejected(process(factory, doc), "title_ko", "title_latin");
+
+		doc = new SolrInputDocument();
+		doc.addField("id", "2");
+		doc.addField("title_latin", "latin only");
+		doc.addField("title_ko", "latin only");
+		doc.addField("title_ko", "한국어");
+		// emitted if any value is
+		assertRejected(process(factory, doc));
+	}
+
+@Test
+	public void testCopyFieldSources() throws Exception
+	{
+		TestFactory factory = getFactory("fields", "title_ko");
+		factory.analyzers.put("title_ko", sieveAnalyzer(CJKEmitType.HANGUL));
+		factory.copySources.put("title_ko", "title");
+		SolrInputDocument doc = new SolrInputDocument();
+		doc.addField("title", "한국어");
+		assertRejected(process(factory, doc));
+		doc = new SolrInputDocument();
+		doc.addField("title", "latin");
+		assertRejected(process(factory, doc), "title_ko");
+	}
+
+	/**
+	 * the analyzer's own decision is recorded, so hints, budgets, token types
+	 * and reloaded rules all count
+	 */
+@Test
+	public void testAnalyzerDecides() throws Exception
+	{
+		TestFactory factory = getFactory("fields", "hinted, budget, typed, reloaded");
+
+		final ScriptHintChannel hintChannel = new ScriptHintChannel();
+		factory.analyzers.put("hinted", new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				CJKSieveFilter sieve = new CJKSieveFilter(t, CJKEmitType.HANGUL);
+				sieve.setCharFilterHints(hintChannel);
+				return new TokenStreamComponents(t, sieve);
+			}
+
+			@Override
+			protected Reader initReader(Reader reader)
+			{
+				try
+				{
+					return new ScriptHintCharFilter(CharReader.get(reader), hintChannel);
+				}
+				catch (IOException e)
+				{
+					throw new RuntimeException(e);
+				}
+			}
+		});
+
+		factory.analyzers.put("budget", new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				CJKSieveFilter sieve = new CJKSieveFilter(t, CJKEmitType.HANGUL);
+				sieve.setBudget(2, 0, CJKSieveFilter.BudgetFallback.EMIT);
+				return new TokenStreamComponents(t, sieve);
+			}
+		});
+
+		factory.analyzers.put("typed", sieveAnalyzer(CJKEmitType.JAPANESE));
+
+		final CJKSieveRules[] rules = { new CJKSieveRules(CJKEmitType.HANGUL) };
+		factory.analyzers.put("reloaded", new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				return new TokenStreamComponents(t, new CJKSieveFilter(t, new CJKSieveRules.Source()
+				{
+					public CJKSieveRules getRules()
+					{
+						return rules[0];
+					}
+				}));
+			}
+		});
+
+		SolrInputDocument doc = new SolrInputDocument();
+		doc.addField("hinted", "[[sieve:kor]]romanized korean");
+		doc.addField("budget", "three latin words");
+		// U+3033 is Common script, but StandardTokenizer types it <KATAKANA>
+		doc.addField("typed", "\u3033");
+		doc.addField("reloaded", "日本語");
+		assertRejected(process(factory, doc), "reloaded");
+
+		rules[0] = new CJKSieveRules(CJKEmitType.CJ);
+		doc = new SolrInputDocument();
+		doc.addField("reloaded", "日本語");
+		assertRejected(process(factory, doc));
+	}
+
+@Test
+	public void testReplacesOldDecisions() throws Exception
+	{
+		TestFactory factory = getFactory("fields", "title_ja", "rejectedField", "rejected");
+		factory.analyzers.put("title_ja", sieveAnalyzer(CJKEmitType.JAPANESE));
+		SolrInputDocument doc = new SolrInputDocument();
+		doc.addField("title_ja", "マンガ");
+		doc.addField("rejected", "title_ja");
+		assertNull(process(factory, doc).getFieldValues("rejected"));
+		doc = new SolrInputDocument();
+		doc.addField("title_ja", "latin");
+		assertEquals(Arrays.asList((Object) "title_ja"), new ArrayList<Object>(process(factory, doc).getFieldValues("rejected")));
+	}
+
+	/**
+	 * without a schema, nothing can be decided, so nothing is rejected
+	 */
+@Test
+	public void testNoSchema() throws Exception
+	{
+		SieveDecisionUpdateProcessorFactory factory = new SieveDecisionUpdateProcessorFactory();
+		NamedList<String> args = new NamedList<String>();
+		args.add("fields", "title_ja");
+		factory.init(args);
+		SolrInputDocument doc = new SolrInputDocument();
+		doc.addField("title_ja", "latin");
+		CollectingProcessor collector = new CollectingProcessor();
+		factory.getInstance(null, null, collector).processAdd(add(doc));
+		assertRejected(collector.docs.get(0));
+	}
+
+@Test
+	public void testBadConfiguration() throws Exception
+	{
+		try
+		{
+			getFactory();
+			fail("expected a configuration error");
+		}
+		catch (RuntimeException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Configuration Error"));
+		}
+	}
+
+	private static void assertRejected(SolrInputDocument doc, String... expected)
+	{
+		Collection<Object> rejected = doc.getFieldValues("sieve_rejected");
+		if (expected.length == 0)
+			assertNull(rejected);
+		else
+			assertEquals(Arrays.asList((Object[]) expected), new ArrayList<Object>(rejected));
+	}
+
+	private static SolrInputDocument process(SieveDecisionUpdateProcessorFactory factory, SolrInputDocument doc) throws IOException
+	{
+		CollectingProcessor collector = new CollectingProcessor();
+		factory.getInstance(null, null, collector).processAdd(add(doc));
+		return collector.docs.get(0);
+	}
+
+	private TestFactory getFactory(String... keysAndValues)
+	{
+		NamedList<String> args = new NamedList<String>();
+		for (int i = 0; i < keysAndValues.length; i += 2)
+			args.add(keysAndValues[i], keysAndValues[i + 1]);
+		TestFactory factory = new TestFactory();
+		factory.init(args);
+		return factory;
+	}
+
+	/**
+	 * @return Analyzer of a StandardTokenizer followed by CJKSieveFilter
+	 */
+	private static Analyzer sieveAnalyzer(final CJKEmitType emitType)
+	{
+		return new ReusableAnalyzerBase()
+		{
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+			{
+				Tokenizer t = new StandardTokenizer(TEST_VERSION_CURRENT, reader);
+				return new TokenStreamComponents(t, new CJKSieveFilter(t, emitType));
+			}
+		};
+	}
+
+	private static AddUpdateCommand add(SolrInputDocument doc)
+	{
+		AddUpdateCommand cmd = new AddUpdateCommand();
+		cmd.solrDoc = doc;
+		return cmd;
+	}
+
+	/** gets analyzers and copyField sources from maps instead of a schema */
+	private static class TestFactory extends SieveDecisionUpdateProcessorFactory
+	{
+		final Map<String,Analyzer> analyzers = new HashMap<String,Analyzer>();
+		/** destination to source */
+		final Map<String,String> copySources = new HashMap<String,String>();
+
+		@Override
+		Analyzer getIndexAnalyzer(IndexSchema schema, String field)
+		{
+			return analyzers.get(field);
+		}
+
+		@Override
+		void addCopiedValues(IndexSchema schema, SolrInputDocument doc, String field, List<String> values)
+		{
+			String source = copySources.get(field);
+			if (source != null && doc.getFieldValues(source) != null)
+			{
+				for (Object value : doc.getFieldValues(source))
+					values.add(value.toString());
+			}
+		}
+	}
+
+	/** the end of the chain:  keeps the documents added */
+	private static class CollectingProcessor extends UpdateRequestProcessor
+	{
+		final List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
+
+		CollectingProcessor()
+		{
+			super(null);
+		}
+
+		@Override
+		public void processAdd(AddUpdateCommand cmd) throws IOException
+		{
+			docs.add(cmd.getSolrInputDocument());
+		}
+	}
+}
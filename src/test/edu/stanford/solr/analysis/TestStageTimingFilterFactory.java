@@ -0,0 +1,154 @@
+/*
+Copyright (c) 2012.
+The Board of Trustees of the Leland Stanford Junior University.
+All rights reserved.
+
+Redistribution and use of this distribution in source and binary forms, with or
+without modification, are permitted provided that: The above copyright notice
+and this permission notice appear in all copies and supporting documentation;
+The name, identifiers, and trademarks of The Board of Trustees of the Leland
+Stanford Junior University are not used in advertising or publicity without the
+express prior written permission of The Board of Trustees of the Leland Stanford
+Junior University; Recipients acknowledge that this distribution is made
+available as a research courtesy, "as is", potentially with defects, without
+ any obligation on the part of The Board of Trustees of the Leland Stanford
+ Junior University to provide support, services, or repair;
+
+THE BOARD OF TRUSTEES OF THE LELAND STANFORD JUNIOR UNIVERSITY DISCLAIMS ALL
+WARRANTIES, EXPRESS OR IMPLIED, WITH REGARD TO THIS SOFTWARE, INCLUDING WITHOUT
+LIMITATION ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+PARTICULAR PURPOSE, AND IN NO EVENT SHALL THE BOARD OF TRUSTEES OF THE LELAND
+STANFORD JUNIOR UNIVERSITY BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+WHETHER IN AN ACTION OF CONTRACT, TORT (INCLUDING NEGLIGENCE) OR STRICT
+LIABILITY, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+SOFTWARE.
+*/
+
+package edu.stanford.solr.analysis;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.*;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.util._TestUtil;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.response.SolrQueryResponse;
+
+import org.junit.Test;
+
+import edu.stanford.lucene.analysis.cjk.*;
+
+/**
+ * Tests for StageTimingFilterFactory and SieveStatisticsRequestHandler
+ */
+public class TestStageTimingFilterFactory extends BaseTokenStreamTestCase
+{
+    static {
+    	System.setProperty("tests.asserts.gracious", "true");
+    }
+
+@Test
+	public void testTimesWrappedSieve() throws Exception
+	{
+		StageTimingFilterFactory factory = getFactory("timing-sieve", "1", "true");
+		assertTrue(factory.getDelegate() instanceof CJKSieveFilterFactory);
+
+		TokenStream stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("マンガ is katakana")));
+		assertTrue(stream instanceof StageTimingFilter);
+		assertTokenStreamContents(stream, new String[] { "マンガ", "is", "katakana" });
+		stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("한국경제 hangul only")));
+		assertTokenStreamContents(stream, new String[] {});
+
+		StageTiming timing = StageTiming.forName("timing-sieve");
+		assertEquals(2, timing.getValues());
+		assertEquals(2, timing.getSampledValues());
+		assertEquals(6, timing.getTokensIn());
+		assertEquals(3, timing.getTokensOut());
+		assertTrue(timing.getPercentileNanos(99) > 0);
+
+		SieveStatistics stats = SieveStatistics.forName("timing-sieve");
+		assertEquals(2, stats.getValues());
+		assertEquals(1, stats.getValuesEmitted());
+		assertEquals(6, stats.getTokens());
+		assertEquals(3, stats.getTokensEmitted());
+	}
+
+@Test
+	public void testSampling() throws Exception
+	{
+		StageTimingFilterFactory factory = getFactory("timing-sampled", "3", "true");
+		Tokenizer tokenizer = new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader(""));
+		TokenStream stream = factory.create(tokenizer);
+		for (int i = 0; i < 9; i++)
+		{
+			tokenizer.reset(new StringReader("日本マンガ"));
+			assertTokenStreamContents(stream, new String[] { "日", "本", "マンガ" });
+		}
+		StageTiming timing = StageTiming.forName("timing-sampled");
+		assertEquals(9, timing.getValues());
+		assertEquals(3, timing.getSampledValues());
+		assertEquals(27, timing.getTokensOut());
+	}
+
+@Test
+	public void testDisabled() throws Exception
+	{
+		StageTimingFilterFactory factory = getFactory("timing-disabled", "1", "false");
+		TokenStream stream = factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("マンガ is katakana")));
+		assertTrue(stream instanceof CJKSieveFilter);
+		assertTokenStreamContents(stream, new String[] { "マンガ", "is", "katakana" });
+		assertEquals(0, StageTiming.forName("timing-disabled").getValues());
+	}
+
+@Test
+	public void testRequestHandler() throws Exception
+	{
+		StageTimingFilterFactory factory = getFactory("timing-handler", "1", "true");
+		assertTokenStreamContents(factory.create(new StandardTokenizer(TEST_VERSION_CURRENT, new StringReader("壇君"))), new String[] {});
+
+		SolrQueryResponse rsp = new SolrQueryResponse();
+		new SieveStatisticsRequestHandler().handleRequestBody(null, rsp);
+		NamedList<?> sieve = (NamedList<?>) ((NamedList<?>) rsp.getValues().get("sieve")).get("timing-handler");
+		assertEquals(1L, sieve.get("values"));
+		assertEquals(1L, sieve.get("valuesSuppressed"));
+		assertEquals(0L, sieve.get("budgetExceeded"));
+		NamedList<?> stage = (NamedList<?>) ((NamedList<?>) rsp.getValues().get("stages")).get("timing-handler");
+		assertEquals(2L, stage.get("tokensIn"));
+		assertEquals(0L, stage.get("tokensOut"));
+	}
+
+@Test
+	public void testDelegateArgMissing() throws Exception
+	{
+		try
+		{
+			new StageTimingFilterFactory().init(new HashMap<String,String>());
+			fail("no RuntimeException thrown when missing delegate parameter");
+		}
+		catch (RuntimeException e)
+		{
+			assertEquals("Configuration Error: missing parameter 'delegate' for StageTimingFilterFactory", e.getMessage());
+		}
+	}
+
+	private StageTimingFilterFactory getFactory(String name, String sampleEvery, String enabled) throws Exception
+	{
+		StageTimingFilterFactory factory = new StageTimingFilterFactory();
+		Map<String,String> args = new HashMap<String,String>();
+		args.put("delegate", CJKSieveFilterFactory.class.getName());
+		args.put("stage", name);
+		args.put("sampleEvery", sampleEvery);
+		args.put("enabled", enabled);
+		args.put("emitIf", "japanese");
+		args.put("stats", name);
+		factory.init(args);
+		File instanceDir = _TestUtil.getTempDir("stagetiming");
+		instanceDir.mkdirs();
+		factory.inform(new SolrResourceLoader(instanceDir.getPath()));
+		return factory;
+	}
+}